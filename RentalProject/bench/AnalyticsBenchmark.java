@@ -0,0 +1,78 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Measures how RentalAnalytics scales with cores: analyzes one large in-memory history with
+// fork/join pools of 1, 2, 4, ... threads up to the machine's core count and prints the
+// speedup over one thread. Speedup stays below linear once the merges of the per-range
+// summaries (one entry per vehicle) or memory bandwidth dominate.
+// Usage: java AnalyticsBenchmark [--records 2000000] [--vehicles 10000] [--quick]
+public class AnalyticsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int records = 2_000_000;
+        int vehicles = 10_000;
+        boolean quick = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--records") && i + 1 < args.length) {
+                records = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--vehicles") && i + 1 < args.length) {
+                vehicles = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--quick")) {
+                quick = true;
+            } else {
+                System.out.println("Usage: java AnalyticsBenchmark [--records n] [--vehicles n] [--quick]");
+                System.exit(2);
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(cores + " cores, Java " + System.getProperty("java.version")
+                + ", " + records + " records over " + vehicles + " vehicles");
+
+        List<Vehicle> fleet = new ArrayList<>(vehicles);
+        for (int i = 0; i < vehicles; i++) {
+            Car car = new Car("Make", "Model", 2020, 4);
+            car.setLicensePlate(LoadBenchmark.plate(i));
+            fleet.add(car);
+        }
+        LocalDate first = LocalDate.of(2020, 1, 1);
+        List<RentalRecord> history = generate(fleet, records, first);
+        LocalDate last = history.get(history.size() - 1).getRecordDate();
+
+        Bench bench = quick ? new Bench(1, 2, 500) : new Bench(2, 5, 2000);
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads = (threads == cores) ? cores + 1 : Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            RentalAnalytics analytics = new RentalAnalytics(pool, RentalAnalytics.DEFAULT_LEAF_SIZE);
+            Bench.Result result = bench.run("analytics.threads." + threads,
+                    i -> analytics.analyze(history, fleet, first, last));
+            pool.shutdown();
+            if (threads == 1) {
+                single = result.nsPerOp;
+            }
+            System.out.printf("  speedup %.2fx on %d threads (%.0f%% of linear)%n",
+                    single / result.nsPerOp, threads, 100 * single / result.nsPerOp / threads);
+        }
+    }
+
+    // Each vehicle alternates RENT and RETURN; days advance slowly through the history.
+    private static List<RentalRecord> generate(List<Vehicle> fleet, int records, LocalDate first) {
+        Random random = new Random(42);
+        Customer customer = new Customer(0, "Customer 0");
+        boolean[] out = new boolean[fleet.size()];
+        List<RentalRecord> history = new ArrayList<>(records);
+        LocalDate day = first;
+        int perDay = Math.max(1, fleet.size() / 4);
+        for (int i = 0; i < records; i++) {
+            if (i % perDay == 0 && i > 0) {
+                day = day.plusDays(1);
+            }
+            int v = random.nextInt(fleet.size());
+            history.add(new RentalRecord(fleet.get(v), customer, day, out[v] ? 0.0 : 100.0, out[v] ? "RETURN" : "RENT"));
+            out[v] = !out[v];
+        }
+        return history;
+    }
+}
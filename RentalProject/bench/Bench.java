@@ -0,0 +1,159 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Small microbenchmark harness for the benchmarks in this folder (the project has no build
+// to pull in JMH). Each case runs warmup rounds, then measurement rounds of a fixed duration,
+// and reports the average time per operation over the measurement rounds, with the spread.
+// Every operation returns a value that the harness consumes, so the JIT cannot drop the
+// work as dead code.
+public class Bench {
+
+    // One benchmarked operation; i counts invocations, for cycling through inputs.
+    public interface Op {
+        Object run(long i) throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final double nsPerOp;
+        public final double minNsPerOp;
+        public final double maxNsPerOp;
+
+        Result(String name, double nsPerOp, double minNsPerOp, double maxNsPerOp) {
+            this.name = name;
+            this.nsPerOp = nsPerOp;
+            this.minNsPerOp = minNsPerOp;
+            this.maxNsPerOp = maxNsPerOp;
+        }
+    }
+
+    private static volatile Object sink;
+
+    // Captured up front, so results still show while a benchmark silences System.out.
+    private final PrintStream out = System.out;
+
+    private final int warmupRounds;
+    private final int rounds;
+    private final long roundNanos;
+    private final List<Result> results = new ArrayList<>();
+
+    public Bench(int warmupRounds, int rounds, long roundMillis) {
+        this.warmupRounds = warmupRounds;
+        this.rounds = rounds;
+        this.roundNanos = roundMillis * 1_000_000L;
+    }
+
+    public Result run(String name, Op op) throws Exception {
+        long calls = 0;
+        for (int r = 0; r < warmupRounds; r++) {
+            calls = round(op, calls, null);
+        }
+        double total = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        double[] perOp = new double[1];
+        for (int r = 0; r < rounds; r++) {
+            calls = round(op, calls, perOp);
+            total += perOp[0];
+            min = Math.min(min, perOp[0]);
+            max = Math.max(max, perOp[0]);
+        }
+        Result result = new Result(name, total / rounds, min, max);
+        results.add(result);
+        out.printf("%-44s %,14.1f ns/op  (min %,.1f, max %,.1f)%n", name, result.nsPerOp, min, max);
+        return result;
+    }
+
+    // Calls op until the round's time is up. Cheap operations run in growing batches between
+    // clock reads, so System.nanoTime does not dominate; slow ones check the clock every call.
+    private long round(Op op, long calls, double[] perOp) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + roundNanos;
+        long n = 0;
+        int batch = 1;
+        Object last = null;
+        long now = start;
+        do {
+            long batchStart = now;
+            for (int k = 0; k < batch; k++) {
+                Object value = op.run(calls + n++);
+                if (value != null) {
+                    last = value;
+                }
+            }
+            now = System.nanoTime();
+            if (now - batchStart < 10_000 && batch < 1024) {
+                batch <<= 1;
+            }
+        } while (now < deadline);
+        sink = last;
+        if (perOp != null) {
+            perOp[0] = (now - start) / (double) n;
+        }
+        return calls + n;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    // Writes "name,nsPerOp" lines, the format read by readBaseline.
+    public void writeResults(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Result result : results) {
+            lines.add(result.name + "," + String.format("%.1f", result.nsPerOp));
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    public static Map<String, Double> readBaseline(Path file) throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comma = line.lastIndexOf(',');
+            if (line.startsWith("#") || comma < 0) {
+                continue;
+            }
+            baseline.put(line.substring(0, comma), Double.parseDouble(line.substring(comma + 1)));
+        }
+        return baseline;
+    }
+
+    // Prints each result against the baseline and returns how many are slower than the
+    // baseline by more than the given fraction (0.25 = 25%).
+    public int compare(Map<String, Double> baseline, double tolerance) {
+        int regressions = 0;
+        out.println("Compared with baseline:");
+        for (Result result : results) {
+            Double expected = baseline.get(result.name);
+            if (expected == null) {
+                out.printf("  %-44s (no baseline)%n", result.name);
+                continue;
+            }
+            double change = result.nsPerOp / expected - 1;
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            out.printf("  %-44s %+7.1f%%%s%n", result.name, change * 100, regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    static void deleteDirectory(Path dir) {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+}
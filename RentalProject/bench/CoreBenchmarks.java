@@ -0,0 +1,233 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Benchmarks the RentalSystem hot paths: lookups, rent/return with and without fsync,
+// startup loading at several history sizes, the RentalHistory queries, and the text and
+// binary vehicle encodings.
+// Usage: java CoreBenchmarks [--quick] [--out <file>] [--baseline <file>]
+//   --out       writes the results as "name,nsPerOp" lines (the baseline format)
+//   --baseline  compares with a previous run, e.g. bench/baseline.txt, and exits with
+//               status 1 if any case is more than 25% slower
+public class CoreBenchmarks {
+    private static final int VEHICLES = 10_000;
+    private static final int CUSTOMERS = 10_000;
+    private static final double TOLERANCE = 0.25;
+
+    public static void main(String[] args) throws Exception {
+        boolean quick = false;
+        Path out = null;
+        Path baseline = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quick")) {
+                quick = true;
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = Paths.get(args[++i]);
+            } else if (args[i].equals("--baseline") && i + 1 < args.length) {
+                baseline = Paths.get(args[++i]);
+            } else {
+                System.out.println("Usage: java CoreBenchmarks [--quick] [--out <file>] [--baseline <file>]");
+                System.exit(2);
+            }
+        }
+        Bench bench = quick ? new Bench(1, 2, 200) : new Bench(3, 5, 1000);
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores, Java "
+                + System.getProperty("java.version"));
+
+        lookups(bench);
+        rentAndReturn(bench, Journal.Durability.NO_SYNC);
+        rentAndReturn(bench, Journal.Durability.SYNC_EVERY_COMMIT);
+        historyQueries(bench);
+        vehicleEncoding(bench);
+        for (int records : quick ? new int[] {10_000, 100_000} : new int[] {10_000, 100_000, 1_000_000}) {
+            load(bench, records);
+        }
+
+        if (out != null) {
+            bench.writeResults(out);
+            System.out.println("Results written to " + out);
+        }
+        if (baseline != null) {
+            Map<String, Double> expected = Bench.readBaseline(baseline);
+            int regressions = bench.compare(expected, TOLERANCE);
+            if (regressions > 0) {
+                System.out.println(regressions + " case(s) regressed by more than " + (int) (TOLERANCE * 100) + "%.");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void lookups(Bench bench) throws Exception {
+        Path dir = Files.createTempDirectory("rental-bench-lookup");
+        LoadBenchmark.generate(dir, 0);
+        RentalSystem system = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+        String[] plates = new String[VEHICLES];
+        String[] lowerPlates = new String[VEHICLES];
+        String[] ids = new String[CUSTOMERS];
+        for (int i = 0; i < VEHICLES; i++) {
+            plates[i] = LoadBenchmark.plate(i);
+            lowerPlates[i] = plates[i].toLowerCase();
+        }
+        for (int i = 0; i < CUSTOMERS; i++) {
+            ids[i] = Integer.toString(i);
+        }
+        bench.run("findVehicleByPlate", i -> system.findVehicleByPlate(plates[(int) (i % VEHICLES)]));
+        bench.run("findVehicleByPlate.lowerCase", i -> system.findVehicleByPlate(lowerPlates[(int) (i % VEHICLES)]));
+        bench.run("findVehicleByPlate.miss", i -> system.findVehicleByPlate("ZZZ999"));
+        bench.run("findCustomerById.int", i -> system.findCustomerById((int) (i % CUSTOMERS)));
+        bench.run("findCustomerById.string", i -> system.findCustomerById(ids[(int) (i % CUSTOMERS)]));
+        system.shutdown();
+        Bench.deleteDirectory(dir);
+    }
+
+    // One operation rents a vehicle and returns it again, so two records are written.
+    private static void rentAndReturn(Bench bench, Journal.Durability durability) throws Exception {
+        Path dir = Files.createTempDirectory("rental-bench-rent");
+        LoadBenchmark.generate(dir, 0);
+        RentalSystem system = new RentalSystem(dir, durability);
+        Vehicle[] vehicles = new Vehicle[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            vehicles[i] = system.findVehicleByPlate(LoadBenchmark.plate(i));
+        }
+        Customer customer = system.findCustomerById(0);
+        LocalDate today = LocalDate.now();
+        // The single-item calls print a line each; keep that out of the measurement.
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        try {
+            bench.run("rentAndReturn." + durability, i -> {
+                Vehicle vehicle = vehicles[(int) (i % VEHICLES)];
+                system.rentVehicle(vehicle, customer, today, 100.0);
+                return system.returnVehicle(vehicle, customer, today, 0.0);
+            });
+            if (durability == Journal.Durability.NO_SYNC) {
+                // Same again with a change event subscriber attached, to show what publishing costs.
+                RentalEventRing.Subscription subscription = system.subscribe(batch -> { });
+                bench.run("rentAndReturn." + durability + ".subscribed", i -> {
+                    Vehicle vehicle = vehicles[(int) (i % VEHICLES)];
+                    system.rentVehicle(vehicle, customer, today, 100.0);
+                    return system.returnVehicle(vehicle, customer, today, 0.0);
+                });
+                subscription.close();
+            }
+            // 100 rent+return pairs through the single-writer pipeline, waiting only for the last.
+            CommandPipeline pipeline = new CommandPipeline(system, 1024);
+            bench.run("pipeline.rentAndReturn.x100." + durability, i -> {
+                RentalFuture last = null;
+                for (int k = 0; k < 100; k++) {
+                    Vehicle vehicle = vehicles[(int) ((i * 100 + k) % VEHICLES)];
+                    pipeline.rentVehicle(vehicle, customer, today, 100.0);
+                    last = pipeline.returnVehicle(vehicle, customer, today, 0.0);
+                }
+                return last.persisted().join();
+            });
+            pipeline.close();
+        } finally {
+            System.setOut(console);
+        }
+        system.shutdown();
+        Bench.deleteDirectory(dir);
+    }
+
+    private static void historyQueries(Bench bench) throws Exception {
+        Path dir = Files.createTempDirectory("rental-bench-history");
+        LoadBenchmark.generate(dir, 200_000);
+        RentalSystem system = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+        RentalHistory history = system.getRentalHistory();
+        String[] plates = new String[VEHICLES];
+        for (int i = 0; i < VEHICLES; i++) {
+            plates[i] = LoadBenchmark.plate(i);
+        }
+        bench.run("history.byVehicle", i -> history.getRentalRecordsByVehicle(plates[(int) (i % VEHICLES)]));
+        bench.run("history.byCustomerId", i -> history.getRentalRecordsByCustomerId((int) (i % CUSTOMERS)));
+        bench.run("history.byCustomerName", i -> history.getRentalRecordsByCustomer("Customer 4242"));
+        bench.run("history.copyAll.200k", i -> history.getRentalHistory());
+        system.shutdown();
+        Bench.deleteDirectory(dir);
+    }
+
+    // One operation encodes or decodes the whole fleet of VEHICLES mixed-type vehicles.
+    private static void vehicleEncoding(Bench bench) throws Exception {
+        List<Vehicle> fleet = new ArrayList<>(VEHICLES);
+        for (int i = 0; i < VEHICLES; i++) {
+            Vehicle vehicle;
+            switch (i % 4) {
+                case 0: vehicle = new Car("Make" + (i % 20), "Model" + (i % 50), 2000 + i % 25, 4); break;
+                case 1: vehicle = new SportCar("Make" + (i % 20), "Model" + (i % 50), 2010, 2, 300 + i % 200, i % 2 == 0); break;
+                case 2: vehicle = new Motorcycle("Make" + (i % 20), "Model" + (i % 50), 2015, i % 3 == 0); break;
+                default: vehicle = new Truck("Make" + (i % 20), "Model" + (i % 50), 2012, 5.0 + i % 30); break;
+            }
+            vehicle.setLicensePlate(LoadBenchmark.plate(i));
+            fleet.add(vehicle);
+        }
+        bench.run("vehicles.encode.text.10k", i -> {
+            StringBuilder text = new StringBuilder();
+            for (Vehicle vehicle : fleet) {
+                text.append(RentalSystem.formatVehicle(vehicle)).append('\n');
+            }
+            return text.toString().getBytes(StandardCharsets.UTF_8);
+        });
+        bench.run("vehicles.encode.binary.10k", i -> {
+            VehicleCodec.Encoder encoder = new VehicleCodec.Encoder();
+            for (Vehicle vehicle : fleet) {
+                encoder.encode(vehicle);
+            }
+            return encoder.toByteArray();
+        });
+
+        StringBuilder text = new StringBuilder();
+        VehicleCodec.Encoder encoder = new VehicleCodec.Encoder();
+        for (Vehicle vehicle : fleet) {
+            text.append(RentalSystem.formatVehicle(vehicle)).append('\n');
+            encoder.encode(vehicle);
+        }
+        ByteBuffer textBytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] binaryBytes = encoder.toByteArray();
+        System.out.println("Encoded fleet: " + textBytes.limit() + " bytes as text, " + binaryBytes.length + " binary");
+        bench.run("vehicles.decode.text.10k", i -> {
+            List<Vehicle> decoded = new ArrayList<>(VEHICLES);
+            int start = 0;
+            while (start < textBytes.limit()) {
+                int end = RentalDataLoader.indexOf(textBytes, start, textBytes.limit(), (byte) '\n');
+                decoded.add(RentalDataLoader.parseVehicle(textBytes, start, end));
+                start = end + 1;
+            }
+            return decoded;
+        });
+        bench.run("vehicles.decode.binary.10k", i -> {
+            List<Vehicle> decoded = new ArrayList<>(VEHICLES);
+            VehicleCodec.Decoder decoder = new VehicleCodec.Decoder(ByteBuffer.wrap(binaryBytes));
+            while (decoder.hasNext()) {
+                decoded.add(decoder.next());
+            }
+            return decoded;
+        });
+    }
+
+    private static void load(Bench bench, int records) throws Exception {
+        Path dir = Files.createTempDirectory("rental-bench-load");
+        LoadBenchmark.generate(dir, records);
+        bench.run("loadData." + records, i -> {
+            RentalSystem system = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+            system.shutdown();
+            return system;
+        });
+        Bench.deleteDirectory(dir);
+    }
+}
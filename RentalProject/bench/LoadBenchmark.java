@@ -0,0 +1,81 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures how fast RentalDataLoader restores a large rental history.
+// Usage: java LoadBenchmark [records] [iterations]   (defaults: 3,000,000 records, 5 iterations)
+public class LoadBenchmark {
+    private static final int VEHICLES = 10_000;
+    private static final int CUSTOMERS = 10_000;
+
+    public static void main(String[] args) throws IOException {
+        int records = (args.length > 0) ? Integer.parseInt(args[0]) : 3_000_000;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("rental-load-bench");
+        System.out.println("Generating " + records + " records in " + dir + " ...");
+        generate(dir, records);
+        System.out.println("Records file: " + (Files.size(dir.resolve("rental_records.txt")) >> 20) + " MB, "
+                + Runtime.getRuntime().availableProcessors() + " cores");
+
+        for (int i = 1; i <= iterations; i++) {
+            long start = System.nanoTime();
+            RentalSystem system = new RentalSystem(dir);
+            long elapsed = System.nanoTime() - start;
+            int loaded = system.getRentalHistory().getRentalHistory().size();
+            system.shutdown();
+            System.out.printf("Run %d: loaded %,d records in %,d ms (%,.0f records/sec)%n",
+                    i, loaded, elapsed / 1_000_000, loaded / (elapsed / 1e9));
+        }
+        System.out.println("Records-only parse (vehicles and customers already loaded):");
+        RentalSystem system = new RentalSystem(dir);
+        for (int i = 1; i <= iterations; i++) {
+            AtomicLong skipped = new AtomicLong();
+            long start = System.nanoTime();
+            int parsed = RentalDataLoader.parseLines(dir.resolve("rental_records.txt"),
+                    RentalDataLoader.recordParser(system::vehicleByPlateCode, system::findCustomerById,
+                            name -> null, skipped)).size();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Run %d: parsed %,d records in %,d ms (%,.0f records/sec)%n",
+                    i, parsed, elapsed / 1_000_000, parsed / (elapsed / 1e9));
+        }
+        system.shutdown();
+
+        for (File f : dir.toFile().listFiles()) {
+            f.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    static String plate(int i) {
+        return "" + (char) ('A' + (i / 676) % 26) + (char) ('A' + (i / 26) % 26) + (char) ('A' + i % 26)
+                + String.format("%03d", i % 1000);
+    }
+
+    static void generate(Path dir, int records) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("vehicles.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < VEHICLES; i++) {
+                out.write(plate(i) + ",Toyota,Corolla," + (2000 + i % 25) + ",AVAILABLE\n");
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("customers.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < CUSTOMERS; i++) {
+                out.write(i + ",Customer " + i + "\n");
+            }
+        }
+        LocalDate day = LocalDate.of(2015, 1, 1);
+        try (BufferedWriter out = Files.newBufferedWriter(dir.resolve("rental_records.txt"), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < records; i++) {
+                int vehicle = (i / 2) % VEHICLES;
+                String type = (i % 2 == 0) ? "RENT" : "RETURN";
+                out.write(type + "," + plate(vehicle) + "," + ((i / 2) % CUSTOMERS) + ","
+                        + day.plusDays(i / 2000) + "," + (i % 2 == 0 ? "120.0" : "15.5") + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load client for RentalServer: simulates many counter terminals, each looking up its vehicle,
+// renting it and returning it in a loop, and reports throughput and latency per request type.
+// Usage: java RentalLoadClient [--url http://host:port] [--terminals 1000] [--seconds 30] [--customer 0]
+// Without --url it starts a server in-process on a temporary fleet of 10,000 vehicles.
+public class RentalLoadClient {
+
+    private static class Stats {
+        final String name;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void record(int status, long startNanos) {
+            latencies.record(System.nanoTime() - startNanos);
+            if (status == 200) {
+                ok.incrementAndGet();
+            } else if (status == 409) {
+                conflicts.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        void print(double seconds) {
+            System.out.printf("%-8s %,10d ok %,8d conflicts %,6d errors %,10.0f req/s"
+                    + " | p50 %,8.2f ms | p99 %,8.2f ms | max %,8.2f ms%n",
+                    name, ok.get(), conflicts.get(), errors.get(), latencies.getCount() / seconds,
+                    latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+                    latencies.getMax() / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        int terminals = 1000;
+        int seconds = 30;
+        int customer = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url": url = args[i + 1]; break;
+                case "--terminals": terminals = Integer.parseInt(args[i + 1]); break;
+                case "--seconds": seconds = Integer.parseInt(args[i + 1]); break;
+                case "--customer": customer = Integer.parseInt(args[i + 1]); break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        // Let every terminal keep its connection alive (the default pools only 5).
+        System.setProperty("http.maxConnections", Integer.toString(terminals));
+
+        Path dir = null;
+        RentalSystem system = null;
+        RentalServer server = null;
+        if (url == null) {
+            dir = Files.createTempDirectory("rental-load-client");
+            LoadBenchmark.generate(dir, 0);
+            system = new RentalSystem(dir);
+            server = new RentalServer(system, 0);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+            System.out.println("Started a server at " + url + " on " + dir);
+        }
+
+        String[] lines = request("GET", url + "/vehicles?status=AVAILABLE").split("\n");
+        List<String> plates = new ArrayList<>();
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                plates.add(line.substring(0, line.indexOf(',')));
+            }
+        }
+        if (plates.isEmpty()) {
+            System.out.println("No available vehicles at " + url);
+            System.exit(1);
+        }
+        System.out.println(terminals + " terminals, " + plates.size() + " available vehicles, " + seconds + " s");
+
+        Stats lookups = new Stats("lookup");
+        Stats rents = new Stats("rent");
+        Stats returns = new Stats("return");
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService executor = RentalServer.newPerTaskExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < terminals; t++) {
+            String plate = plates.get(t % plates.size());
+            String base = url;
+            int customerId = customer;
+            futures.add(executor.submit(() -> {
+                String rental = "?plate=" + plate + "&customer=" + customerId;
+                while (System.nanoTime() < deadline) {
+                    long begin = System.nanoTime();
+                    lookups.record(status("GET", base + "/vehicles/" + plate), begin);
+                    begin = System.nanoTime();
+                    rents.record(status("POST", base + "/rent" + rental + "&amount=100"), begin);
+                    begin = System.nanoTime();
+                    returns.record(status("POST", base + "/return" + rental), begin);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        lookups.print(elapsed);
+        rents.print(elapsed);
+        returns.print(elapsed);
+
+        if (server != null) {
+            server.stop(0);
+            system.shutdown();
+            Bench.deleteDirectory(dir);
+        }
+    }
+
+    // Returns the HTTP status, or -1 if the request failed.
+    private static int status(String method, String url) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            int status = connection.getResponseCode();
+            // Read the body to the end so the connection can be reused.
+            InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                drain(in);
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static String request(String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        return new String(drain(connection.getInputStream()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] drain(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Per-item outcome of a batch operation on RentalSystem, in input order.
+public class BatchResult<T> {
+
+    public static class Item<T> {
+        private final T input;
+        private final boolean success;
+        private final String message;
+
+        Item(T input, boolean success, String message) {
+            this.input = input;
+            this.success = success;
+            this.message = message;
+        }
+
+        public T getInput() {
+            return input;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        // Why the item failed; null for a succeeded item.
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return (success ? "OK" : "FAILED") + (message != null ? " | " + message : "") + " | " + input;
+        }
+    }
+
+    private final List<Item<T>> items = new ArrayList<>();
+    private int successCount;
+
+    void succeeded(T input) {
+        items.add(new Item<>(input, true, null));
+        successCount++;
+    }
+
+    void failed(T input, String message) {
+        items.add(new Item<>(input, false, message));
+    }
+
+    // Fails every item that succeeded in memory but whose save failed.
+    void persistFailed(String message) {
+        for (int i = 0; i < items.size(); i++) {
+            Item<T> item = items.get(i);
+            if (item.success) {
+                items.set(i, new Item<>(item.input, false, message));
+                successCount--;
+            }
+        }
+    }
+
+    public List<Item<T>> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    public int getSuccessCount() {
+        return successCount;
+    }
+
+    public int getFailureCount() {
+        return items.size() - successCount;
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+// Streams vehicle and customer CSV files into a RentalSystem. Lines are read in fixed-size
+// batches, so memory stays bounded however large the file is; each batch is parsed on all
+// cores and added through the batch API, which persists it with a single journal write.
+//
+// Vehicle rows:  type,plate,make,model,year,<type fields>
+//   CAR,plate,make,model,year,seats
+//   SPORTCAR,plate,make,model,year,seats,horsepower,hasTurbo
+//   MOTORCYCLE,plate,make,model,year,hasSidecar
+//   TRUCK,plate,make,model,year,cargoCapacity
+// Customer rows: id,name (the name may itself contain commas)
+// A first line starting with "type," or "id," is a header and is skipped.
+public class BulkImporter {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    // Rejected rows described in the report; any beyond this are only counted.
+    public static final int MAX_REPORTED_REJECTS = 1000;
+
+    // Called after every batch with the totals so far.
+    public interface ProgressListener {
+        void progress(ImportReport report);
+    }
+
+    public static class ImportReport {
+        private long rowsRead;
+        private long imported;
+        private long rejected;
+        private final List<String> rejections = new ArrayList<>();
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        // "line <n>: <reason>" for the first MAX_REPORTED_REJECTS rejected rows.
+        public List<String> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        void reject(long line, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTS) {
+                rejections.add("line " + line + ": " + reason);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Read " + rowsRead + " rows | Imported: " + imported + " | Rejected: " + rejected;
+        }
+    }
+
+    private final RentalSystem rentalSystem;
+    private final int batchSize;
+    private final ProgressListener listener;
+
+    public BulkImporter(RentalSystem rentalSystem) {
+        this(rentalSystem, DEFAULT_BATCH_SIZE, null);
+    }
+
+    public BulkImporter(RentalSystem rentalSystem, int batchSize, ProgressListener listener) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.rentalSystem = rentalSystem;
+        this.batchSize = batchSize;
+        this.listener = listener;
+    }
+
+    public ImportReport importVehicles(Path file) throws IOException {
+        return importFile(file, "type,", BulkImporter::parseVehicle, rentalSystem::addVehicles);
+    }
+
+    public ImportReport importCustomers(Path file) throws IOException {
+        return importFile(file, "id,", BulkImporter::parseCustomer, rentalSystem::addCustomers);
+    }
+
+    private <T> ImportReport importFile(Path file, String header, Function<String, T> parser,
+            Function<List<T>, BatchResult<T>> sink) throws IOException {
+        ImportReport report = new ImportReport();
+        List<String> lines = new ArrayList<>(batchSize);
+        long firstLine = 1;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line != null && line.regionMatches(true, 0, header, 0, header.length())) {
+                firstLine++;
+                line = reader.readLine();
+            }
+            while (line != null) {
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    importBatch(lines, firstLine, parser, sink, report);
+                    firstLine += lines.size();
+                    lines.clear();
+                }
+                line = reader.readLine();
+            }
+        }
+        if (!lines.isEmpty()) {
+            importBatch(lines, firstLine, parser, sink, report);
+        }
+        return report;
+    }
+
+    private <T> void importBatch(List<String> lines, long firstLine, Function<String, T> parser,
+            Function<List<T>, BatchResult<T>> sink, ImportReport report) {
+        // Each slot ends up holding the parsed row, or the reason it could not be parsed.
+        Object[] parsed = new Object[lines.size()];
+        IntStream.range(0, parsed.length).parallel().forEach(i -> {
+            try {
+                parsed[i] = parser.apply(lines.get(i));
+            } catch (RuntimeException e) {
+                parsed[i] = new Rejection(e.getMessage());
+            }
+        });
+
+        List<T> rows = new ArrayList<>(parsed.length);
+        for (Object row : parsed) {
+            if (row != null && !(row instanceof Rejection)) {
+                @SuppressWarnings("unchecked")
+                T t = (T) row;
+                rows.add(t);
+            }
+        }
+        List<BatchResult.Item<T>> items = rows.isEmpty()
+                ? Collections.<BatchResult.Item<T>>emptyList() : sink.apply(rows).getItems();
+        // Report in line order: the batch results follow the parsed rows, in order.
+        int next = 0;
+        for (int i = 0; i < parsed.length; i++) {
+            if (parsed[i] instanceof Rejection) {
+                report.reject(firstLine + i, ((Rejection) parsed[i]).reason);
+            } else if (parsed[i] != null) {
+                BatchResult.Item<T> item = items.get(next++);
+                if (item.isSuccess()) {
+                    report.imported++;
+                } else {
+                    report.reject(firstLine + i, item.getMessage());
+                }
+            }
+        }
+        report.rowsRead += parsed.length;
+        if (listener != null) {
+            listener.progress(report);
+        }
+    }
+
+    private static class Rejection {
+        final String reason;
+
+        Rejection(String reason) {
+            this.reason = reason;
+        }
+    }
+
+    // Returns null for blank lines; throws IllegalArgumentException describing a bad row.
+    static Vehicle parseVehicle(String line) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        String[] f = fields(line, 6);
+        String type = f[0].toUpperCase();
+        String plate = f[1];
+        if (!Vehicle.isValidPlate(plate)) {
+            throw new IllegalArgumentException("Invalid license plate '" + plate + "'");
+        }
+        int year = parseInt(f[4], "year");
+        Vehicle vehicle;
+        switch (type) {
+            case "CAR":
+                vehicle = new Car(f[2], f[3], year, parseInt(f[5], "seats"));
+                break;
+            case "SPORTCAR":
+                f = fields(line, 8);
+                vehicle = new SportCar(f[2], f[3], year, parseInt(f[5], "seats"),
+                        parseInt(f[6], "horsepower"), parseBoolean(f[7], "hasTurbo"));
+                break;
+            case "MOTORCYCLE":
+                vehicle = new Motorcycle(f[2], f[3], year, parseBoolean(f[5], "hasSidecar"));
+                break;
+            case "TRUCK":
+                try {
+                    vehicle = new Truck(f[2], f[3], year, Double.parseDouble(f[5]));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid cargoCapacity '" + f[5] + "'");
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown vehicle type '" + f[0] + "'");
+        }
+        vehicle.setLicensePlate(plate);
+        return vehicle;
+    }
+
+    static Customer parseCustomer(String line) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("Expected id,name");
+        }
+        String name = line.substring(comma + 1).trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Missing customer name");
+        }
+        return new Customer(parseInt(line.substring(0, comma).trim(), "customer id"), name);
+    }
+
+    // Splits off the first count comma-separated, trimmed fields; the last one takes the rest.
+    private static String[] fields(String line, int count) {
+        String[] fields = new String[count];
+        int from = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int comma = line.indexOf(',', from);
+            if (comma < 0) {
+                throw new IllegalArgumentException("Expected " + count + " fields, found " + (i + 1));
+            }
+            fields[i] = line.substring(from, comma).trim();
+            from = comma + 1;
+        }
+        fields[count - 1] = line.substring(from).trim();
+        return fields;
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + " '" + value + "'");
+        }
+    }
+
+    private static boolean parseBoolean(String value, String field) {
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false") || value.equalsIgnoreCase("no")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid " + field + " '" + value + "'");
+    }
+}
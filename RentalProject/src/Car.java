@@ -17,13 +17,15 @@ public class Car extends Vehicle implements Rentable {
 
     @Override
     public void rentVehicle() {
-        setStatus(VehicleStatus.RENTED);
-        System.out.println("Car " + getLicensePlate() + " has been rented.");
+        if (moveTo(VehicleStatus.RENTED)) {
+            System.out.println("Car " + getLicensePlate() + " has been rented.");
+        }
     }
 
     @Override
     public void returnVehicle() {
-        setStatus(VehicleStatus.AVAILABLE);
-        System.out.println("Car " + getLicensePlate() + " has been returned.");
+        if (moveTo(VehicleStatus.AVAILABLE)) {
+            System.out.println("Car " + getLicensePlate() + " has been returned.");
+        }
     }
 }
\ No newline at end of file
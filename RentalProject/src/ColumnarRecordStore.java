@@ -0,0 +1,139 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stores records as primitive columns instead of objects: epoch day (int), amount in cents
+// (long), record type (byte) and vehicle and customer ordinals (int), 21 bytes per record
+// in all. A RentalRecord holding a LocalDate costs about three times that. Amounts are kept
+// to the cent.
+// Columns grow in fixed-size segments that are never copied. get returns a flyweight view
+// that reads its segment on demand; forEach reads the columns directly and builds no object
+// per record. Vehicles, customers and record types are stored once each, in dictionaries
+// indexed by ordinal.
+class ColumnarRecordStore implements RecordStore {
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final class Segment {
+        final int[] days = new int[SEGMENT_SIZE];
+        final long[] cents = new long[SEGMENT_SIZE];
+        final byte[] types = new byte[SEGMENT_SIZE];
+        final int[] vehicles = new int[SEGMENT_SIZE];
+        final int[] customers = new int[SEGMENT_SIZE];
+    }
+
+    // Replaced (never modified in place) when a segment is added, so views created under
+    // RentalHistory's lock can read their segment later without it.
+    private volatile Segment[] segments = new Segment[0];
+    private int size;
+
+    // Ordinal dictionaries; vehicles and customers are matched by identity.
+    private final List<Vehicle> vehicles = new ArrayList<>();
+    private final Map<Vehicle, Integer> vehicleOrdinals = new IdentityHashMap<>();
+    private final List<Customer> customers = new ArrayList<>();
+    private final Map<Customer, Integer> customerOrdinals = new IdentityHashMap<>();
+    private final List<String> types = new ArrayList<>();
+
+    // Marks a missing date in the day column.
+    private static final int NO_DATE = RentalHistory.NO_DATE;
+
+    @Override
+    public int add(RentalRecord record) {
+        int position = size;
+        int offset = position & SEGMENT_MASK;
+        if (offset == 0) {
+            Segment[] grown = new Segment[segments.length + 1];
+            System.arraycopy(segments, 0, grown, 0, segments.length);
+            grown[segments.length] = new Segment();
+            segments = grown;
+        }
+        Segment segment = segments[position >>> SEGMENT_BITS];
+        LocalDate date = record.getRecordDate();
+        segment.days[offset] = (date == null) ? NO_DATE : (int) date.toEpochDay();
+        segment.cents[offset] = Math.round(record.getTotalAmount() * 100);
+        segment.types[offset] = (byte) ordinal(types, null, record.getRecordType());
+        segment.vehicles[offset] = ordinal(vehicles, vehicleOrdinals, record.getVehicle());
+        segment.customers[offset] = ordinal(customers, customerOrdinals, record.getCustomer());
+        size++;
+        return position;
+    }
+
+    // Called by RentalHistory with at least its read lock held; the view resolves the vehicle,
+    // customer and type now and reads the primitive columns when asked.
+    @Override
+    public RentalRecord get(int position) {
+        Segment segment = segments[position >>> SEGMENT_BITS];
+        int offset = position & SEGMENT_MASK;
+        return new View(segment, offset, vehicles.get(segment.vehicles[offset]),
+                customers.get(segment.customers[offset]), types.get(segment.types[offset]));
+    }
+
+    // Called by RentalHistory with at least its read lock held.
+    @Override
+    public void forEach(int from, int to, RentalHistory.RecordVisitor visitor) {
+        Segment[] all = segments;
+        int position = from;
+        while (position < to) {
+            Segment segment = all[position >>> SEGMENT_BITS];
+            int offset = position & SEGMENT_MASK;
+            int end = Math.min(SEGMENT_SIZE, offset + (to - position));
+            for (int i = offset; i < end; i++) {
+                visitor.visit(vehicles.get(segment.vehicles[i]), customers.get(segment.customers[i]),
+                        segment.days[i], segment.cents[i], types.get(segment.types[i]));
+            }
+            position += end - offset;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Types are few ("RENT", "RETURN"), so they are looked up with a linear scan.
+    private static <T> int ordinal(List<T> dictionary, Map<T, Integer> ordinals, T value) {
+        if (ordinals == null) {
+            int index = dictionary.indexOf(value);
+            if (index < 0) {
+                if (dictionary.size() > Byte.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many record types.");
+                }
+                dictionary.add(value);
+                index = dictionary.size() - 1;
+            }
+            return index;
+        }
+        Integer ordinal = ordinals.get(value);
+        if (ordinal == null) {
+            ordinal = dictionary.size();
+            dictionary.add(value);
+            ordinals.put(value, ordinal);
+        }
+        return ordinal;
+    }
+
+    private static final class View extends RentalRecord {
+        private final Segment segment;
+        private final int offset;
+
+        View(Segment segment, int offset, Vehicle vehicle, Customer customer, String recordType) {
+            super(vehicle, customer, null, 0, recordType);
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public LocalDate getRecordDate() {
+            int day = segment.days[offset];
+            return (day == NO_DATE) ? null : LocalDate.ofEpochDay(day);
+        }
+
+        @Override
+        public double getTotalAmount() {
+            return segment.cents[offset] / 100.0;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Optional single-writer execution mode for a RentalSystem. Commands from any thread go onto
+// a pre-allocated ring of slots and pass through three stages, each one thread with its own
+// cursor, in the style of a disruptor:
+//   writer    applies the commands to the system one at a time, in ring order, and queues
+//             their journal lines without waiting
+//   journal   waits once per journal for everything the writer has applied so far, so a
+//             burst of commands shares one write
+//   reply     completes each command's RentalFuture and frees its slot
+// Only the writer changes state, so commands are applied in one deterministic order and the
+// vehicle locks it takes are never contended. Submitting claims a slot with one compare-and-set
+// and blocks only while the ring is full. A command that throws fails its own future only.
+// Calling the system's own mutators alongside the pipeline stays safe (they keep their
+// locks), but only pipelined commands are ordered by the ring.
+public class CommandPipeline {
+
+    public enum Type {
+        ADD_VEHICLE,
+        ADD_CUSTOMER,
+        RENT,
+        RETURN
+    }
+
+    // Longest a stage thread sleeps between checks when idle.
+    private static final long MAX_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    // One ring slot, reused for every lap. Fields are written by the submitter before it
+    // publishes the slot, and by each stage before it advances its cursor past it.
+    private static final class Command {
+        volatile long published = -1;
+        Type type;
+        Vehicle vehicle;
+        Customer customer;
+        LocalDate date;
+        double amount;
+        RentalFuture future;
+        long ticket;
+        // Thrown by the system while applying the command; it is not journaled then.
+        RuntimeException error;
+        IOException failure;
+    }
+
+    // Value of claimed once the pipeline is closed; submitting fails from then on.
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final RentalSystem system;
+    private final Command[] ring;
+    private final int mask;
+    // Next sequence to hand out, or CLOSED.
+    private final AtomicLong claimed = new AtomicLong();
+    // The sequence claimed reached before it was closed.
+    private volatile long closedAt = -1;
+    // Each stage's cursor: the number of commands it has finished.
+    private volatile long applied;
+    private volatile long journaled;
+    private volatile long replied;
+    private volatile boolean stopped;
+    private final Thread[] stages;
+
+    // capacity is rounded up to a power of two.
+    public CommandPipeline(RentalSystem system, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.system = system;
+        this.ring = new Command[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Command();
+        }
+        this.mask = size - 1;
+        this.stages = new Thread[] {
+            new Thread(this::runWriter, "rental-pipeline-writer"),
+            new Thread(this::runJournal, "rental-pipeline-journal"),
+            new Thread(this::runReply, "rental-pipeline-reply")
+        };
+        for (Thread stage : stages) {
+            stage.setDaemon(true);
+            stage.start();
+        }
+    }
+
+    // The returned future completes with true once the vehicle is added and saved, or with
+    // false if it has no plate or the plate is taken.
+    public RentalFuture addVehicle(Vehicle vehicle) {
+        return submit(Type.ADD_VEHICLE, vehicle, null, null, 0);
+    }
+
+    public RentalFuture addCustomer(Customer customer) {
+        return submit(Type.ADD_CUSTOMER, null, customer, null, 0);
+    }
+
+    // As RentalSystem.rentVehicleAsync, except that the future completes only after the
+    // record is persisted too (persisted() completes at the same time).
+    public RentalFuture rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        return submit(Type.RENT, vehicle, customer, date, amount);
+    }
+
+    public RentalFuture returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        return submit(Type.RETURN, vehicle, customer, date, extraFees);
+    }
+
+    private RentalFuture submit(Type type, Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        // Claiming and the closed check are one atomic step, so close() knows exactly which
+        // commands it has to wait for.
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq == CLOSED) {
+                throw new IllegalStateException("Command pipeline is closed.");
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        long idleNanos = 0;
+        // The slot is free once the reply stage is done with its previous lap.
+        while (seq - ring.length >= replied) {
+            idleNanos = backOff(idleNanos);
+        }
+        Command command = ring[(int) seq & mask];
+        RentalFuture future = new RentalFuture();
+        command.type = type;
+        command.vehicle = vehicle;
+        command.customer = customer;
+        command.date = date;
+        command.amount = amount;
+        command.future = future;
+        command.published = seq;
+        return future;
+    }
+
+    // Commands submitted but not yet replied to.
+    public long getBacklog() {
+        long end = claimed.get();
+        return ((end == CLOSED) ? closedAt : end) - replied;
+    }
+
+    private void runWriter() {
+        long idleNanos = 0;
+        long seq = applied;
+        while (!stopped) {
+            Command command = ring[(int) seq & mask];
+            if (command.published != seq) {
+                idleNanos = backOff(idleNanos);
+                continue;
+            }
+            idleNanos = 0;
+            // A failing command fails on its own; the writer carries on with the next one.
+            try {
+                command.error = null;
+                command.ticket = system.applyCommand(command.type, command.vehicle, command.customer, command.date,
+                        command.amount);
+            } catch (RuntimeException e) {
+                command.error = e;
+                command.ticket = RentalSystem.REJECTED;
+            }
+            applied = ++seq;
+        }
+    }
+
+    private void runJournal() {
+        long idleNanos = 0;
+        long from = journaled;
+        while (!stopped) {
+            long to = applied;
+            if (to == from) {
+                idleNanos = backOff(idleNanos);
+                continue;
+            }
+            idleNanos = 0;
+            // The last ticket of each journal commits the whole range in one write; the calls
+            // for the earlier ones then return at once, reporting a failed write if any.
+            for (long seq = to - 1; seq >= from; seq--) {
+                await(ring[(int) seq & mask]);
+            }
+            journaled = from = to;
+        }
+    }
+
+    private void await(Command command) {
+        command.failure = null;
+        if (command.ticket < 0) {
+            if (command.ticket != RentalSystem.REJECTED) {
+                command.failure = new IOException("Error saving " + command.type + ".");
+            }
+            return;
+        }
+        try {
+            system.awaitCommand(command.type, command.ticket);
+        } catch (IOException e) {
+            command.failure = e;
+        }
+    }
+
+    private void runReply() {
+        long idleNanos = 0;
+        long from = replied;
+        while (!stopped) {
+            long to = journaled;
+            if (to == from) {
+                idleNanos = backOff(idleNanos);
+                continue;
+            }
+            idleNanos = 0;
+            for (long seq = from; seq < to; seq++) {
+                Command command = ring[(int) seq & mask];
+                RentalFuture future = command.future;
+                boolean accepted = command.ticket != RentalSystem.REJECTED;
+                // A command whose line could not be queued fails as a whole.
+                boolean unsaved = accepted && command.ticket < 0;
+                Exception error = unsaved ? command.failure : command.error;
+                IOException failure = command.failure;
+                command.vehicle = null;
+                command.customer = null;
+                command.future = null;
+                command.error = null;
+                command.failure = null;
+                if (error != null) {
+                    future.completeExceptionally(error);
+                    future.persisted().completeExceptionally(error);
+                    continue;
+                }
+                future.complete(accepted);
+                if (failure != null) {
+                    future.persisted().completeExceptionally(failure);
+                } else {
+                    future.persisted().complete(accepted);
+                }
+            }
+            replied = from = to;
+        }
+    }
+
+    // Spins briefly, then sleeps for doubling periods up to MAX_IDLE_NANOS.
+    private static long backOff(long idleNanos) {
+        if (idleNanos < 64) {
+            Thread.yield();
+            return idleNanos + 1;
+        }
+        idleNanos = Math.min(idleNanos * 2, MAX_IDLE_NANOS);
+        LockSupport.parkNanos(idleNanos);
+        return idleNanos;
+    }
+
+    // Refuses new commands, waits for the submitted ones to be replied to, and stops the stages.
+    public synchronized void close() {
+        long end;
+        do {
+            end = claimed.get();
+            if (end == CLOSED) {
+                return;
+            }
+            closedAt = end;
+        } while (!claimed.compareAndSet(end, CLOSED));
+        long idleNanos = 0;
+        while (replied < end) {
+            idleNanos = backOff(idleNanos);
+        }
+        stopped = true;
+        for (Thread stage : stages) {
+            try {
+                stage.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+// Maps int keys (plate codes, customer ids) to shards 0..shards-1 by consistent hashing.
+// Each shard owns VIRTUAL_NODES points on a ring of 32-bit hashes; a key belongs to the
+// shard owning the first point at or after the key's hash, wrapping around. Virtual nodes
+// even out the shares. Adding a shard moves only about 1/(shards+1) of the keys.
+public final class ConsistentHashRing {
+    public static final int VIRTUAL_NODES = 128;
+
+    private final int shards;
+    private final int[] points;  // ascending hashes
+    private final int[] owners;  // shard owning each point
+
+    public ConsistentHashRing(int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Need at least one shard.");
+        }
+        this.shards = shards;
+        long[] packed = new long[shards * VIRTUAL_NODES];
+        for (int shard = 0; shard < shards; shard++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                int hash = mix(shard * 0x1000193L + v * 0x9E3779B97F4A7C15L);
+                // Sort by hash, then shard, so ties resolve the same way on every node.
+                packed[shard * VIRTUAL_NODES + v] = ((long) (hash ^ Integer.MIN_VALUE) << 32) | shard;
+            }
+        }
+        Arrays.sort(packed);
+        points = new int[packed.length];
+        owners = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            points[i] = (int) (packed[i] >> 32) ^ Integer.MIN_VALUE;
+            owners[i] = (int) packed[i];
+        }
+    }
+
+    public int getShardCount() {
+        return shards;
+    }
+
+    public int shardFor(int key) {
+        int hash = mix(key);
+        // Binary search for the first point >= hash, comparing as the sort did.
+        int lo = 0;
+        int hi = points.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Integer.compare(points[mid] ^ Integer.MIN_VALUE, hash ^ Integer.MIN_VALUE) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return owners[(lo == points.length) ? 0 : lo];
+    }
+
+    // 64-bit finalizer (from MurmurHash3), folded to 32 bits.
+    private static int mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return (int) x;
+    }
+}
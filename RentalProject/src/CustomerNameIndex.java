@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Case-insensitive customer name search. Results are ranked in three tiers:
+//   1. the whole name starts with the query (an exact match sorts first),
+//   2. a later word of the name starts with the query ("smi" finds "Alice Smith"),
+//   3. the query appears anywhere in the name, found through an n-gram index (the query's
+//      single character or character pair for short queries, its trigrams otherwise).
+// Each tier is read in index order and the search stops once it has enough results, so
+// a query costs about O(log n + limit) rather than a scan over every customer.
+public class CustomerNameIndex {
+    private final List<Customer> customers = new ArrayList<>();
+    private final List<String> lowerNames = new ArrayList<>();
+
+    // Lower-cased full names, and the name text from each later word start, to ordinals.
+    private final TreeMap<String, IntList> byName = new TreeMap<>();
+    private final TreeMap<String, IntList> byWord = new TreeMap<>();
+    // Ordinals of the names containing each character, each pair of characters (keyed by
+    // both chars, so exactly) and each trigram (keyed by a hash of its three chars).
+    private final IntObjectMap<IntList> byUnigram = new IntObjectMap<>();
+    private final IntObjectMap<IntList> byBigram = new IntObjectMap<>();
+    private final IntObjectMap<IntList> byTrigram = new IntObjectMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void add(Customer customer) {
+        String name = customer.getCustomerName();
+        if (name == null) {
+            return;
+        }
+        String lower = name.toLowerCase();
+        lock.writeLock().lock();
+        try {
+            int ordinal = customers.size();
+            customers.add(customer);
+            lowerNames.add(lower);
+            post(byName, lower, ordinal);
+            for (int i = 1; i < lower.length(); i++) {
+                if (!Character.isLetterOrDigit(lower.charAt(i - 1)) && Character.isLetterOrDigit(lower.charAt(i))) {
+                    post(byWord, lower.substring(i), ordinal);
+                }
+            }
+            for (int i = 0; i < lower.length(); i++) {
+                post(byUnigram, lower.charAt(i), ordinal);
+                if (i + 2 <= lower.length()) {
+                    post(byBigram, bigram(lower, i), ordinal);
+                }
+                if (i + 3 <= lower.length()) {
+                    post(byTrigram, trigram(lower, i), ordinal);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            customers.clear();
+            lowerNames.clear();
+            byName.clear();
+            byWord.clear();
+            byUnigram.clear();
+            byBigram.clear();
+            byTrigram.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return customers.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns up to limit customers whose name contains the query, best matches first.
+    public List<Customer> search(String query, int limit) {
+        List<Customer> result = new ArrayList<>();
+        if (query == null || limit <= 0) {
+            return result;
+        }
+        String q = query.trim().toLowerCase();
+        if (q.isEmpty()) {
+            return result;
+        }
+        IntSet seen = new IntSet(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            collectPrefix(byName, q, limit, seen, result);
+            collectPrefix(byWord, q, limit, seen, result);
+            if (result.size() < limit) {
+                collectInfix(q, limit, seen, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Called with the read lock held.
+    private void collectPrefix(TreeMap<String, IntList> index, String prefix, int limit,
+            IntSet seen, List<Customer> result) {
+        for (Map.Entry<String, IntList> entry : index.tailMap(prefix, true).entrySet()) {
+            if (result.size() >= limit || !entry.getKey().startsWith(prefix)) {
+                return;
+            }
+            IntList ordinals = entry.getValue();
+            for (int i = 0; i < ordinals.size() && result.size() < limit; i++) {
+                if (seen.add(ordinals.get(i))) {
+                    result.add(customers.get(ordinals.get(i)));
+                }
+            }
+        }
+    }
+
+    // Called with the read lock held. Walks the shortest posting list among the query's
+    // n-grams and verifies each candidate, since trigram hashes may collide.
+    private void collectInfix(String q, int limit, IntSet seen, List<Customer> result) {
+        IntList shortest = null;
+        if (q.length() == 1) {
+            shortest = byUnigram.get(q.charAt(0));
+        } else if (q.length() == 2) {
+            shortest = byBigram.get(bigram(q, 0));
+        } else {
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                IntList ordinals = byTrigram.get(trigram(q, i));
+                if (ordinals == null) {
+                    return; // Some trigram never occurs, so nothing can match.
+                }
+                if (shortest == null || ordinals.size() < shortest.size()) {
+                    shortest = ordinals;
+                }
+            }
+        }
+        if (shortest == null) {
+            return;
+        }
+        for (int i = 0; i < shortest.size() && result.size() < limit; i++) {
+            int ordinal = shortest.get(i);
+            if (!seen.contains(ordinal) && lowerNames.get(ordinal).contains(q)) {
+                seen.add(ordinal);
+                result.add(customers.get(ordinal));
+            }
+        }
+    }
+
+    private static void post(TreeMap<String, IntList> index, String key, int ordinal) {
+        IntList ordinals = index.get(key);
+        if (ordinals == null) {
+            ordinals = new IntList(1);
+            index.put(key, ordinals);
+        }
+        ordinals.add(ordinal);
+    }
+
+    // A name repeating an n-gram is posted once.
+    private static void post(IntObjectMap<IntList> index, int key, int ordinal) {
+        IntList ordinals = index.get(key);
+        if (ordinals == null) {
+            ordinals = new IntList();
+            index.put(key, ordinals);
+        }
+        if (ordinals.isEmpty() || ordinals.get(ordinals.size() - 1) != ordinal) {
+            ordinals.add(ordinal);
+        }
+    }
+
+    private static int bigram(String s, int i) {
+        return (s.charAt(i) << 16) | s.charAt(i + 1);
+    }
+
+    private static int trigram(String s, int i) {
+        return (s.charAt(i) * 65599 + s.charAt(i + 1)) * 65599 + s.charAt(i + 2);
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Remembers the result of each client request id for a while, so a retried request returns
+// the original result instead of running again. A retry that arrives while the original is
+// still running waits for it.
+// Memory is bounded: the ids are spread over segments, each a small insertion-ordered hash
+// map with its own lock and a fixed share of the capacity. Since every entry lives equally
+// long, the oldest entry of a segment is the first to expire; expired entries are dropped
+// from the head on each insert, and a full segment drops its oldest one. Lookups and
+// inserts are O(1). An id evicted early (more distinct requests than the capacity within
+// the time to live) is simply run again.
+public class DedupCache<V> {
+    private static final int SEGMENTS = 16;
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> result;
+        final long expiresAt;
+
+        Entry(CompletableFuture<V> result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Segment<V> {
+        private final LinkedHashMap<String, Entry<V>> entries;
+        private final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(capacity * 4 / 3 + 1);
+        }
+
+        // Returns the result already recorded for the id, or records result and returns null.
+        synchronized CompletableFuture<V> claim(String id, CompletableFuture<V> result, long now, long ttlNanos) {
+            Iterator<Entry<V>> oldest = entries.values().iterator();
+            while (oldest.hasNext() && oldest.next().expiresAt - now <= 0) {
+                oldest.remove();
+            }
+            Entry<V> entry = entries.get(id);
+            if (entry != null) {
+                return entry.result;
+            }
+            entries.put(id, new Entry<>(result, now + ttlNanos));
+            if (entries.size() > capacity) {
+                Iterator<Entry<V>> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return null;
+        }
+
+        synchronized void remove(String id, CompletableFuture<V> result) {
+            Entry<V> entry = entries.get(id);
+            if (entry != null && entry.result == result) {
+                entries.remove(id);
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private final Segment<V>[] segments;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LongAdder hits = new LongAdder();
+
+    // Keeps at most capacity request ids, each for ttl.
+    public DedupCache(int capacity, long ttl, TimeUnit unit) {
+        this(capacity, unit.toNanos(ttl), System::nanoTime);
+    }
+
+    // As above, with the clock (in nanoseconds) supplied by tests.
+    @SuppressWarnings("unchecked")
+    DedupCache(int capacity, long ttlNanos, LongSupplier clock) {
+        if (capacity <= 0 || ttlNanos <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive.");
+        }
+        this.segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    // Runs action for a new request id and remembers its result; for an id seen within the
+    // time to live, returns the remembered result instead. If action throws, the id is
+    // forgotten so a retry runs it again.
+    public V execute(String requestId, Supplier<V> action) {
+        Segment<V> segment = segmentFor(requestId);
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> previous = segment.claim(requestId, result, clock.getAsLong(), ttlNanos);
+        if (previous != null) {
+            hits.increment();
+            return previous.join();
+        }
+        try {
+            V value = action.get();
+            result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            segment.remove(requestId, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Segment<V> segmentFor(String requestId) {
+        int h = requestId.hashCode() * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // Requests answered from the cache.
+    public long getHits() {
+        return hits.sum();
+    }
+
+    // Ids currently remembered, including expired ones not yet dropped.
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+}
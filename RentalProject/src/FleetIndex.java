@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Registered vehicles grouped by status and type. Each (status, type) bucket is a dense
+// array with its own lock, and a vehicle remembers its slot, so moving a vehicle between
+// buckets, counting a bucket and listing it cost O(1), O(1) and O(bucket size).
+// Moves are made by RentalSystem while the vehicle's lock stripe is held.
+public class FleetIndex {
+    private static final Vehicle.VehicleStatus[] STATUSES = Vehicle.VehicleStatus.values();
+    private static final VehicleType[] TYPES = VehicleType.values();
+
+    private static class Bucket {
+        Vehicle[] items = new Vehicle[16];
+        volatile int size;
+    }
+
+    private final Bucket[] buckets = new Bucket[STATUSES.length * TYPES.length];
+
+    public FleetIndex() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    private Bucket bucket(Vehicle.VehicleStatus status, VehicleType type) {
+        return buckets[status.ordinal() * TYPES.length + type.ordinal()];
+    }
+
+    // Adds a newly registered vehicle under its current status.
+    public void add(Vehicle vehicle) {
+        Bucket bucket = bucket(vehicle.getStatus(), VehicleType.of(vehicle));
+        synchronized (bucket) {
+            insert(bucket, vehicle);
+        }
+    }
+
+    // Moves a vehicle from one status bucket to another. Vehicles that were never added
+    // (for example ones not registered with the system) are ignored.
+    public void move(Vehicle vehicle, Vehicle.VehicleStatus from, Vehicle.VehicleStatus to) {
+        if (from == to) {
+            return;
+        }
+        VehicleType type = VehicleType.of(vehicle);
+        Bucket source = bucket(from, type);
+        Bucket target = bucket(to, type);
+        // Lock both buckets in a fixed order so concurrent moves cannot deadlock.
+        Bucket first = (from.ordinal() < to.ordinal()) ? source : target;
+        Bucket second = (first == source) ? target : source;
+        synchronized (first) {
+            synchronized (second) {
+                if (remove(source, vehicle)) {
+                    insert(target, vehicle);
+                }
+            }
+        }
+    }
+
+    // Drops every vehicle, e.g. before a replica installs a fresh snapshot.
+    public void clear() {
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                for (int i = 0; i < bucket.size; i++) {
+                    bucket.items[i].fleetSlot = -1;
+                }
+                bucket.items = new Vehicle[16];
+                bucket.size = 0;
+            }
+        }
+    }
+
+    public int count(Vehicle.VehicleStatus status) {
+        int total = 0;
+        for (VehicleType type : TYPES) {
+            total += bucket(status, type).size;
+        }
+        return total;
+    }
+
+    public int count(Vehicle.VehicleStatus status, VehicleType type) {
+        return bucket(status, type).size;
+    }
+
+    public List<Vehicle> vehicles(Vehicle.VehicleStatus status) {
+        List<Vehicle> result = new ArrayList<>(count(status));
+        for (VehicleType type : TYPES) {
+            copyInto(bucket(status, type), result);
+        }
+        return result;
+    }
+
+    public List<Vehicle> vehicles(Vehicle.VehicleStatus status, VehicleType type) {
+        List<Vehicle> result = new ArrayList<>();
+        copyInto(bucket(status, type), result);
+        return result;
+    }
+
+    private static void copyInto(Bucket bucket, List<Vehicle> result) {
+        synchronized (bucket) {
+            result.addAll(Arrays.asList(bucket.items).subList(0, bucket.size));
+        }
+    }
+
+    // Called with the bucket locked.
+    private static void insert(Bucket bucket, Vehicle vehicle) {
+        if (bucket.size == bucket.items.length) {
+            bucket.items = Arrays.copyOf(bucket.items, bucket.size * 2);
+        }
+        vehicle.fleetSlot = bucket.size;
+        bucket.items[bucket.size] = vehicle;
+        bucket.size = bucket.size + 1;
+    }
+
+    // Called with the bucket locked; fills the hole with the bucket's last vehicle.
+    private static boolean remove(Bucket bucket, Vehicle vehicle) {
+        int slot = vehicle.fleetSlot;
+        if (slot < 0 || slot >= bucket.size || bucket.items[slot] != vehicle) {
+            return false;
+        }
+        int last = bucket.size - 1;
+        Vehicle moved = bucket.items[last];
+        bucket.items[slot] = moved;
+        moved.fleetSlot = slot;
+        bucket.items[last] = null;
+        bucket.size = last;
+        vehicle.fleetSlot = -1;
+        return true;
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only line journal that keeps its file open and batches concurrent appends
+// into group commits: whichever caller finds no write in progress writes (and, if
+// configured, fsyncs) everything queued so far on behalf of all waiting callers.
+// The first failed write fails the journal for good: the batch is cut back off the file
+// so it never ends mid-line, and that batch, every line queued after it and every later
+// append report the error.
+public class Journal implements Closeable {
+
+    public enum Durability {
+        SYNC_EVERY_COMMIT, // fsync after every group commit
+        SYNC_INTERVAL,     // fsync from a background thread every syncMillis
+        NO_SYNC            // leave flushing to the operating system
+    }
+
+    private final Path path;
+    // Replaced only by rotate, while no batch is being written.
+    private volatile FileChannel channel;
+    private final Durability durability;
+    private final ScheduledExecutorService syncer;
+    // Times each group commit's write and fsync; may be null.
+    private final OperationMetrics commits;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();
+
+    // Bytes queued for the next commit, and a spare buffer swapped in while writing.
+    private byte[] pending = new byte[8192];
+    private byte[] spare = new byte[8192];
+    private int pendingLength;
+
+    private long appendedSeq;   // sequence number of the last queued line
+    private long committedSeq;  // sequence number of the last line written
+    private boolean writing;
+    private boolean closed;
+    private volatile boolean dirty; // written since the last fsync
+
+    // The first failed commit, reported to every caller whose line it or a later batch held.
+    private IOException failure;
+    private long failedFrom;
+    // Set with failure; read without the lock on every mutation of the RentalSystem.
+    private volatile boolean failed;
+
+    public Journal(Path path, Durability durability, long syncMillis) throws IOException {
+        this(path, durability, syncMillis, null);
+    }
+
+    public Journal(Path path, Durability durability, long syncMillis, OperationMetrics commits) throws IOException {
+        this.path = path;
+        this.durability = durability;
+        this.commits = commits;
+        this.channel = open(path);
+        if (durability == Durability.SYNC_INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-sync-" + path.getFileName());
+                t.setDaemon(true);
+                return t;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Writes one line and returns once it is part of a committed batch.
+    public void append(String line) throws IOException {
+        awaitCommit(enqueue(line));
+    }
+
+    // Writes all lines in a single commit.
+    public void appendAll(List<String> lines) throws IOException {
+        awaitCommit(enqueueAll(lines));
+    }
+
+    // Queues a line without waiting and returns its sequence number for awaitCommit.
+    // Lines are written in the order they are queued.
+    public long enqueue(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            ensureOpen();
+            put(bytes);
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues several lines as one entry and returns its sequence number.
+    public long enqueueAll(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            ensureOpen();
+            put(bytes);
+            return ++appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the entry with the given sequence number has been written.
+    // The first waiter to find no write in progress writes the whole queued batch.
+    public void awaitCommit(long seq) throws IOException {
+        lock.lock();
+        try {
+            if (seq > appendedSeq) {
+                throw new IllegalArgumentException("Sequence " + seq + " has not been queued in " + path.getFileName()
+                        + ".");
+            }
+            while (committedSeq < seq) {
+                if (writing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+                writeBatch();
+            }
+            if (failure != null && seq >= failedFrom) {
+                throw new IOException("Journal write failed for " + path.getFileName(), failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held; releases it while the batch is being written.
+    private void writeBatch() {
+        byte[] batch = pending;
+        int length = pendingLength;
+        long from = committedSeq + 1;
+        long upTo = appendedSeq;
+        pending = spare;
+        pendingLength = 0;
+        if (failure != null) {
+            // Lines queued before the failure was seen are dropped; awaitCommit reports them.
+            committedSeq = upTo;
+            committed.signalAll();
+            return;
+        }
+        writing = true;
+        lock.unlock();
+        IOException error = null;
+        long start = System.nanoTime();
+        long sizeBefore = -1;
+        try {
+            sizeBefore = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (durability == Durability.SYNC_EVERY_COMMIT) {
+                channel.force(false);
+            } else {
+                dirty = true;
+            }
+        } catch (IOException e) {
+            error = e;
+            cutBack(sizeBefore, e);
+        } finally {
+            if (commits != null) {
+                commits.record(start);
+            }
+            lock.lock();
+        }
+        spare = batch;
+        writing = false;
+        committedSeq = upTo;
+        if (error != null) {
+            failure = error;
+            failedFrom = from;
+            failed = true;
+        }
+        committed.signalAll();
+    }
+
+    // Drops whatever part of a failed batch reached the file, so it ends on a whole line.
+    private void cutBack(long size, IOException error) {
+        if (size < 0) {
+            return;
+        }
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    private void put(byte[] bytes) {
+        if (pendingLength + bytes.length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, pendingLength + bytes.length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+        pendingLength += bytes.length;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Journal " + path.getFileName() + " is closed.");
+        }
+        if (failure != null) {
+            throw new IOException("Journal " + path.getFileName() + " failed and accepts no more writes.", failure);
+        }
+    }
+
+    // True once a write has failed; the journal then rejects every append.
+    public boolean isFailed() {
+        return failed;
+    }
+
+    // Commits everything queued, moves the file to target and continues in a new, empty file.
+    // Appends made during the rotation wait and land in the new file.
+    public void rotate(Path target) throws IOException {
+        lock.lock();
+        try {
+            ensureOpen();
+            while (writing || committedSeq < appendedSeq) {
+                if (writing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+                writeBatch();
+            }
+            ensureOpen();
+            channel.force(false);
+            channel.close();
+            try {
+                Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                channel = open(path);
+            }
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Forces everything written so far to disk.
+    public void sync() throws IOException {
+        dirty = false;
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // Rotated or closed meanwhile; both force the file before closing it.
+        }
+    }
+
+    private void syncQuietly() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    // Commits anything still queued, syncs and closes the file.
+    @Override
+    public void close() throws IOException {
+        long last;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        try {
+            awaitCommit(last);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Latency histogram in the style of HdrHistogram. Values below 128 ns are counted exactly;
+// above that, every power-of-two range is split into 64 linear buckets, so a reported value
+// is within 1/64 (about 1.6%) of the recorded one. The buckets are allocated once and updated
+// with atomic increments, so record() neither locks nor allocates.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_BUCKETS = SUB_BUCKETS >> 1;
+    // Larger values (about 18 minutes and up) are clamped to the top bucket.
+    private static final int MAX_BITS = 40;
+    private static final long MAX_TRACKED = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS) * HALF_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = (nanos < 0) ? 0 : Math.min(nanos, MAX_TRACKED);
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int top = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (top - HALF_BUCKETS);
+    }
+
+    // Largest value that falls into the bucket at the given index.
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_BUCKETS + 1;
+        long top = HALF_BUCKETS + (index - SUB_BUCKETS) % HALF_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    // Reads sum the buckets, so they cost O(buckets) but leave the hot path alone.
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return (count == 0) ? 0 : sum.get() / (double) count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // The value below which the given percentage (0-100) of recordings fall.
+    public long getValueAtPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // Clears the histogram. Recordings racing with a reset may be kept or dropped.
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+    }
+}
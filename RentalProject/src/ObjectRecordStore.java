@@ -0,0 +1,35 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps the RentalRecord objects themselves; get returns the instance that was added.
+class ObjectRecordStore implements RecordStore {
+    private final List<RentalRecord> records = new ArrayList<>();
+
+    @Override
+    public int add(RentalRecord record) {
+        records.add(record);
+        return records.size() - 1;
+    }
+
+    @Override
+    public RentalRecord get(int position) {
+        return records.get(position);
+    }
+
+    @Override
+    public void forEach(int from, int to, RentalHistory.RecordVisitor visitor) {
+        for (int i = from; i < to; i++) {
+            RentalRecord record = records.get(i);
+            LocalDate date = record.getRecordDate();
+            visitor.visit(record.getVehicle(), record.getCustomer(),
+                    (date == null) ? RentalHistory.NO_DATE : (int) date.toEpochDay(),
+                    Math.round(record.getTotalAmount() * 100), record.getRecordType());
+        }
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+}
@@ -0,0 +1,76 @@
+// Latency histogram and rate counter for one operation.
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private volatile long sinceNanos = System.nanoTime();
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Records one call that started at startNanos (a System.nanoTime value).
+    public void record(long startNanos) {
+        latencies.record(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - sinceNanos) / 1e9;
+        return (seconds <= 0) ? 0 : latencies.getCount() / seconds;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencies.getMean() / 1e3;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latencies.getValueAtPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return latencies.getValueAtPercentile(90) / 1e3;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latencies.getValueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latencies.getValueAtPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latencies.getMax() / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        sinceNanos = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s | Count: %d | Mean: %.1f us | p50: %.1f us | p99: %.1f us | Max: %.1f us",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
@@ -0,0 +1,21 @@
+// JMX view of one operation's metrics; times are in microseconds.
+public interface OperationMetricsMBean {
+    long getCount();
+
+    // Operations per second since the metrics were created or last reset.
+    double getThroughput();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+// Background thread that waits for queued journal lines to be committed and then completes
+// the callers' "persisted" futures, so asynchronous operations never block on file I/O.
+// The queue is bounded: when the writer falls behind, submit blocks until it catches up.
+class PersistenceWriter {
+
+    private static class Pending {
+        final long ticket;
+        final CompletableFuture<Boolean> persisted;
+
+        Pending(long ticket, CompletableFuture<Boolean> persisted) {
+            this.ticket = ticket;
+            this.persisted = persisted;
+        }
+    }
+
+    // Queued by close; the writer finishes what is ahead of it and exits.
+    private static final Pending STOP = new Pending(-1, null);
+
+    private final Journal journal;
+    private final BlockingQueue<Pending> queue;
+    private final Thread thread;
+
+    PersistenceWriter(Journal journal, int capacity) {
+        this.journal = journal;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "persistence-writer-" + journal.getPath().getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Completes persisted once the journal entry with this ticket is committed.
+    // Blocks while the queue is full.
+    void submit(long ticket, CompletableFuture<Boolean> persisted) {
+        put(new Pending(ticket, persisted));
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // Only close stops the writer, so nothing queued is left incomplete.
+            }
+            queue.drainTo(batch);
+            // The first awaitCommit writes the whole group; the rest find it already committed.
+            for (Pending pending : batch) {
+                if (pending == STOP) {
+                    return;
+                }
+                try {
+                    journal.awaitCommit(pending.ticket);
+                    pending.persisted.complete(true);
+                } catch (IOException e) {
+                    pending.persisted.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    pending.persisted.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    // Completes everything already submitted, then stops the writer thread.
+    void close() {
+        if (!thread.isAlive()) {
+            return;
+        }
+        put(STOP);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The status change is already applied by the time we get here, so keep waiting for
+    // space even if interrupted; the interrupt is restored afterwards.
+    private void put(Pending pending) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(pending);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
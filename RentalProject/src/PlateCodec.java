@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+
+// Packs a license plate (three letters, three digits) into an int:
+// ((l0 * 26 + l1) * 26 + l2) * 1000 + digits, so 0 ("AAA000") to 17,575,999 ("ZZZ999").
+// Letters are case-insensitive. Encoding allocates nothing, so plates parsed from text or
+// bytes can be validated and used as int keys directly; decode only to show a plate.
+public final class PlateCodec {
+    // Returned by encode for anything that is not a valid plate.
+    public static final int INVALID = -1;
+    public static final int MAX_CODE = 26 * 26 * 26 * 1000 - 1;
+
+    private PlateCodec() {
+    }
+
+    public static int encode(CharSequence plate) {
+        if (plate == null || plate.length() != 6) {
+            return INVALID;
+        }
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = letter(plate.charAt(i));
+            if (letter < 0) {
+                return INVALID;
+            }
+            code = code * 26 + letter;
+        }
+        for (int i = 3; i < 6; i++) {
+            char c = plate.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    // Encodes the ASCII bytes at [start, end) of b, e.g. a field of a memory-mapped data file.
+    public static int encode(ByteBuffer b, int start, int end) {
+        if (end - start != 6) {
+            return INVALID;
+        }
+        int code = 0;
+        for (int i = start; i < start + 3; i++) {
+            int letter = letter((char) b.get(i));
+            if (letter < 0) {
+                return INVALID;
+            }
+            code = code * 26 + letter;
+        }
+        for (int i = start + 3; i < end; i++) {
+            int digit = b.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            code = code * 10 + digit;
+        }
+        return code;
+    }
+
+    public static boolean isValid(CharSequence plate) {
+        return encode(plate) != INVALID;
+    }
+
+    // The upper-case plate for a code returned by encode.
+    public static String decode(int code) {
+        if (code < 0 || code > MAX_CODE) {
+            throw new IllegalArgumentException("Not a plate code: " + code);
+        }
+        char[] plate = new char[6];
+        int letters = code / 1000;
+        int digits = code % 1000;
+        for (int i = 5; i >= 3; i--) {
+            plate[i] = (char) ('0' + digits % 10);
+            digits /= 10;
+        }
+        for (int i = 2; i >= 0; i--) {
+            plate[i] = (char) ('A' + letters % 26);
+            letters /= 26;
+        }
+        return new String(plate);
+    }
+
+    private static int letter(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,13 @@
+// Storage behind RentalHistory: an append-only sequence of records addressed by position.
+// RentalHistory serializes add calls and publishes positions under its lock.
+interface RecordStore {
+    // Appends the record and returns its position.
+    int add(RentalRecord record);
+
+    RentalRecord get(int position);
+
+    // Passes the records at positions [from, to) to the visitor, in order.
+    void forEach(int from, int to, RentalHistory.RecordVisitor visitor);
+
+    int size();
+}
@@ -0,0 +1,382 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Fleet analytics over the rental history, computed on all cores with fork/join:
+//   - utilization: share of the days in a window each vehicle (and each type) was rented
+//   - rental duration: days from each RENT to the vehicle's next RETURN
+//   - idle time: days from each RETURN to the vehicle's next RENT, as a distribution
+// The records are split into ranges that are summarized independently, one summary per
+// vehicle with its first and last event. Adjacent summaries merge by pairing the left
+// range's last event with the right range's first, so the result is exactly that of one
+// pass in history order, however the work is split.
+public class RentalAnalytics {
+    // Ranges at most this long are summarized sequentially.
+    static final int DEFAULT_LEAF_SIZE = 1 << 14;
+
+    private static final byte NONE = 0;
+    private static final byte RENT = 1;
+    private static final byte RETURN = 2;
+
+    private final ForkJoinPool pool;
+    private final int leafSize;
+
+    public RentalAnalytics() {
+        this(ForkJoinPool.commonPool(), DEFAULT_LEAF_SIZE);
+    }
+
+    // The pool's parallelism bounds how many cores the analysis uses.
+    public RentalAnalytics(ForkJoinPool pool, int leafSize) {
+        if (leafSize <= 0) {
+            throw new IllegalArgumentException("Leaf size must be positive.");
+        }
+        this.pool = pool;
+        this.leafSize = leafSize;
+    }
+
+    // Analyzes records (in history order) for the vehicles of fleet; utilization covers the
+    // days from..to inclusive. Records of vehicles outside fleet still count towards the
+    // durations and idle times.
+    public Report analyze(List<RentalRecord> records, Collection<Vehicle> fleet, LocalDate from, LocalDate to) {
+        return analyze(records.size(), (start, end, visitor) -> {
+            for (int i = start; i < end; i++) {
+                RentalRecord record = records.get(i);
+                LocalDate date = record.getRecordDate();
+                visitor.visit(record.getVehicle(), record.getCustomer(),
+                        (date == null) ? RentalHistory.NO_DATE : (int) date.toEpochDay(),
+                        Math.round(record.getTotalAmount() * 100), record.getRecordType());
+            }
+        }, fleet, from, to);
+    }
+
+    // As above, over the records in the history when it is called. Reads the history's
+    // columns through forEach, so no record objects are built.
+    public Report analyze(RentalHistory history, Collection<Vehicle> fleet, LocalDate from, LocalDate to) {
+        return analyze(history.size(), history::forEach, fleet, from, to);
+    }
+
+    private Report analyze(int size, RecordRange records, Collection<Vehicle> fleet, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Window ends before it starts.");
+        }
+        Window window = new Window((int) from.toEpochDay(), (int) to.toEpochDay() + 1);
+        Summary summary = (size == 0) ? new Summary()
+                : pool.invoke(new SummarizeTask(records, 0, size, window, leafSize));
+        return new Report(summary, fleet, window);
+    }
+
+    // Records by position, as RentalHistory.forEach reads them.
+    private interface RecordRange {
+        void forEach(int from, int to, RentalHistory.RecordVisitor visitor);
+    }
+
+    // Days [start, end) as epoch days.
+    private static final class Window {
+        final int start;
+        final int end;
+
+        Window(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long overlap(int from, int to) {
+            return Math.max(0, Math.min(to, end) - Math.max(from, start));
+        }
+    }
+
+    // One vehicle's events within a range of the history.
+    private static final class VehicleSummary {
+        final Vehicle vehicle;
+        byte firstType = NONE;
+        int firstDay;
+        byte lastType = NONE;
+        int lastDay;
+        long rentals;
+        long rentalDays;
+        long rentedDaysInWindow;
+
+        VehicleSummary(Vehicle vehicle) {
+            this.vehicle = vehicle;
+        }
+    }
+
+    // A range's per-vehicle summaries plus the idle gaps completed inside it.
+    private static final class Summary {
+        final IntObjectMap<VehicleSummary> vehicles = new IntObjectMap<>();
+        final IdleDistribution idle = new IdleDistribution();
+
+        void add(Vehicle vehicle, int day, String recordType, Window window) {
+            int plate = vehicle.getPlateCode();
+            byte type = "RENT".equals(recordType) ? RENT : "RETURN".equals(recordType) ? RETURN : NONE;
+            if (plate == PlateCodec.INVALID || day == RentalHistory.NO_DATE || type == NONE) {
+                return;
+            }
+            VehicleSummary v = vehicles.get(plate);
+            if (v == null) {
+                v = new VehicleSummary(vehicle);
+                vehicles.put(plate, v);
+            }
+            if (v.firstType == NONE) {
+                v.firstType = type;
+                v.firstDay = day;
+            } else {
+                pair(v, v.lastType, v.lastDay, type, day, window);
+            }
+            v.lastType = type;
+            v.lastDay = day;
+        }
+
+        // Folds the summary of the range that directly follows this one into this one.
+        void merge(Summary right, Window window) {
+            idle.merge(right.idle);
+            right.vehicles.forEach((plate, r) -> {
+                VehicleSummary l = vehicles.get(plate);
+                if (l == null) {
+                    vehicles.put(plate, r);
+                    return;
+                }
+                pair(l, l.lastType, l.lastDay, r.firstType, r.firstDay, window);
+                l.rentals += r.rentals;
+                l.rentalDays += r.rentalDays;
+                l.rentedDaysInWindow += r.rentedDaysInWindow;
+                l.lastType = r.lastType;
+                l.lastDay = r.lastDay;
+            });
+        }
+
+        // Accounts for two consecutive events of a vehicle. A repeated RENT or RETURN (which
+        // the system never writes) pairs with nothing.
+        private void pair(VehicleSummary v, byte previous, int previousDay, byte next, int nextDay, Window window) {
+            if (previous == RENT && next == RETURN) {
+                v.rentals++;
+                v.rentalDays += nextDay - previousDay;
+                v.rentedDaysInWindow += window.overlap(previousDay, nextDay);
+            } else if (previous == RETURN && next == RENT) {
+                idle.record(nextDay - previousDay);
+            }
+        }
+    }
+
+    private static final class SummarizeTask extends RecursiveTask<Summary> {
+        private static final long serialVersionUID = 1L;
+
+        private final RecordRange records;
+        private final int from;
+        private final int to;
+        private final Window window;
+        private final int leafSize;
+
+        SummarizeTask(RecordRange records, int from, int to, Window window, int leafSize) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.window = window;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= leafSize) {
+                Summary summary = new Summary();
+                records.forEach(from, to,
+                        (vehicle, customer, day, cents, type) -> summary.add(vehicle, day, type, window));
+                return summary;
+            }
+            int mid = (from + to) >>> 1;
+            SummarizeTask left = new SummarizeTask(records, from, mid, window, leafSize);
+            SummarizeTask right = new SummarizeTask(records, mid, to, window, leafSize);
+            left.fork();
+            Summary rightSummary = right.compute();
+            Summary leftSummary = left.join();
+            leftSummary.merge(rightSummary, window);
+            return leftSummary;
+        }
+    }
+
+    // Counts of idle gaps by length in days; gaps of MAX_EXACT_DAYS or more share the last bucket.
+    public static class IdleDistribution {
+        public static final int MAX_EXACT_DAYS = 365;
+
+        private final long[] counts = new long[MAX_EXACT_DAYS + 1];
+        private long count;
+        private long totalDays;
+        private long maxDays;
+
+        void record(long days) {
+            counts[(int) Math.min(Math.max(days, 0), MAX_EXACT_DAYS)]++;
+            count++;
+            totalDays += days;
+            maxDays = Math.max(maxDays, days);
+        }
+
+        void merge(IdleDistribution other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            totalDays += other.totalDays;
+            maxDays = Math.max(maxDays, other.maxDays);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanDays() {
+            return (count == 0) ? 0 : totalDays / (double) count;
+        }
+
+        public long getMaxDays() {
+            return maxDays;
+        }
+
+        // Number of gaps of exactly this many days (the last bucket holds all longer ones).
+        public long getCount(int days) {
+            return counts[Math.min(days, MAX_EXACT_DAYS)];
+        }
+
+        // Smallest gap length, in days, that at least percentile% of the gaps do not exceed;
+        // capped at MAX_EXACT_DAYS.
+        public int getPercentileDays(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int days = 0; days < counts.length; days++) {
+                seen += counts[days];
+                if (seen >= Math.max(target, 1)) {
+                    return days;
+                }
+            }
+            return 0;
+        }
+    }
+
+    // A vehicle's totals over the history, and its utilization in the window.
+    public static class VehicleUsage {
+        private final Vehicle vehicle;
+        private final long rentals;
+        private final long rentalDays;
+        private final long rentedDays;
+        private final long windowDays;
+
+        VehicleUsage(Vehicle vehicle, long rentals, long rentalDays, long rentedDays, long windowDays) {
+            this.vehicle = vehicle;
+            this.rentals = rentals;
+            this.rentalDays = rentalDays;
+            this.rentedDays = rentedDays;
+            this.windowDays = windowDays;
+        }
+
+        public Vehicle getVehicle() {
+            return vehicle;
+        }
+
+        // Completed rentals (a RENT followed by its RETURN).
+        public long getRentals() {
+            return rentals;
+        }
+
+        public double getAverageRentalDays() {
+            return (rentals == 0) ? 0 : rentalDays / (double) rentals;
+        }
+
+        // Days in the window the vehicle was out, including a rental still open.
+        public long getRentedDays() {
+            return rentedDays;
+        }
+
+        public double getUtilization() {
+            return rentedDays / (double) windowDays;
+        }
+    }
+
+    public static class Report {
+        private final IntObjectMap<VehicleUsage> usage = new IntObjectMap<>();
+        private final long[] rentedDaysByType = new long[VehicleType.values().length];
+        private final int[] vehiclesByType = new int[VehicleType.values().length];
+        private final long windowDays;
+        private final long rentals;
+        private final long rentalDays;
+        private final IdleDistribution idle;
+
+        Report(Summary summary, Collection<Vehicle> fleet, Window window) {
+            this.windowDays = window.end - window.start;
+            this.idle = summary.idle;
+            long totalRentals = 0;
+            long totalDays = 0;
+            List<VehicleSummary> all = new ArrayList<>(summary.vehicles.size());
+            summary.vehicles.forEach((plate, v) -> all.add(v));
+            for (VehicleSummary v : all) {
+                totalRentals += v.rentals;
+                totalDays += v.rentalDays;
+            }
+            this.rentals = totalRentals;
+            this.rentalDays = totalDays;
+            for (Vehicle vehicle : fleet) {
+                int plate = vehicle.getPlateCode();
+                if (plate == PlateCodec.INVALID || usage.containsKey(plate)) {
+                    continue;
+                }
+                VehicleSummary v = summary.vehicles.get(plate);
+                long rented = 0;
+                long vehicleRentals = 0;
+                long vehicleRentalDays = 0;
+                if (v != null) {
+                    rented = v.rentedDaysInWindow;
+                    // Still out at the end of the history: rented through the end of the window.
+                    if (v.lastType == RENT) {
+                        rented += window.overlap(v.lastDay, window.end);
+                    }
+                    vehicleRentals = v.rentals;
+                    vehicleRentalDays = v.rentalDays;
+                }
+                usage.put(plate, new VehicleUsage(vehicle, vehicleRentals, vehicleRentalDays, rented, windowDays));
+                int type = VehicleType.of(vehicle).ordinal();
+                rentedDaysByType[type] += rented;
+                vehiclesByType[type]++;
+            }
+        }
+
+        // The vehicle's usage, or null if it was not in the analyzed fleet.
+        public VehicleUsage getUsage(Vehicle vehicle) {
+            return usage.get(vehicle.getPlateCode());
+        }
+
+        public List<VehicleUsage> getUsage() {
+            List<VehicleUsage> result = new ArrayList<>(usage.size());
+            usage.forEach((plate, u) -> result.add(u));
+            return result;
+        }
+
+        // Rented vehicle-days over available vehicle-days for the type's vehicles in the fleet.
+        public double getUtilization(VehicleType type) {
+            int vehicles = vehiclesByType[type.ordinal()];
+            return (vehicles == 0) ? 0 : rentedDaysByType[type.ordinal()] / (double) (vehicles * windowDays);
+        }
+
+        public double getFleetUtilization() {
+            long rented = 0;
+            long vehicles = 0;
+            for (int i = 0; i < vehiclesByType.length; i++) {
+                rented += rentedDaysByType[i];
+                vehicles += vehiclesByType[i];
+            }
+            return (vehicles == 0) ? 0 : rented / (double) (vehicles * windowDays);
+        }
+
+        public long getRentals() {
+            return rentals;
+        }
+
+        public double getAverageRentalDays() {
+            return (rentals == 0) ? 0 : rentalDays / (double) rentals;
+        }
+
+        public IdleDistribution getIdleDistribution() {
+            return idle;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+// Loads the data files by memory-mapping them and parsing line-aligned chunks on all cores.
+// Lines are parsed straight from the mapped bytes, without regular expressions or String.split.
+public class RentalDataLoader {
+    // Files smaller than this are parsed as a single chunk.
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    // Upper bound per chunk, so every chunk fits in one mapping.
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    private static final byte[] RENT = "RENT".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RETURN = "RETURN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STATUS = "STATUS".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PLATE = "Plate: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CUSTOMER = "Customer: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATE = "Date: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AMOUNT = "Amount: $".getBytes(StandardCharsets.US_ASCII);
+
+    // Parses one line, given as the byte range [start, end) of a buffer; returns null to skip it.
+    public interface LineParser<T> {
+        T parse(ByteBuffer buffer, int start, int end);
+    }
+
+    // One line of a rental records file: the vehicle's status after it, and the record
+    // itself (null for STATUS lines, which only change the status).
+    public static class RecordEntry {
+        public final Vehicle vehicle;
+        public final Vehicle.VehicleStatus status;
+        public final RentalRecord record;
+
+        RecordEntry(Vehicle vehicle, Vehicle.VehicleStatus status, RentalRecord record) {
+            this.vehicle = vehicle;
+            this.status = status;
+            this.record = record;
+        }
+    }
+
+    // Parses every line of the file, in parallel, and returns the results in file order.
+    // A missing file yields an empty list.
+    public static <T> List<T> parseLines(Path file, LineParser<T> parser) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel);
+            List<List<T>> parsed;
+            try {
+                parsed = chunks.parallelStream()
+                        .map(chunk -> parseChunk(channel, chunk[0], chunk[1], parser))
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            int total = 0;
+            for (List<T> part : parsed) {
+                total += part.size();
+            }
+            List<T> result = new ArrayList<>(total);
+            for (List<T> part : parsed) {
+                result.addAll(part);
+            }
+            return result;
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    // Cuts the file into [start, end) ranges that each begin at the start of a line.
+    private static List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, (size + parallelism - 1) / parallelism);
+        chunkBytes = Math.min(chunkBytes, MAX_CHUNK_BYTES);
+        List<long[]> chunks = new ArrayList<>();
+        long start = 0;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (start < size) {
+            long end = Math.min(size, start + chunkBytes);
+            // Move the cut forward to just past the next newline.
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = indexOf(probe, 0, read, (byte) '\n');
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += read;
+            }
+            chunks.add(new long[] { start, Math.min(end, size) });
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static <T> List<T> parseChunk(FileChannel channel, long start, long end, LineParser<T> parser) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<T> result = new ArrayList<>();
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int newline = indexOf(buffer, lineStart, limit, (byte) '\n');
+            int lineEnd = (newline < 0) ? limit : newline;
+            int trimmed = (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+            if (trimmed > lineStart) {
+                T value = parser.parse(buffer, lineStart, trimmed);
+                if (value != null) {
+                    result.add(value);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return result;
+    }
+
+    // --- Line parsers ---
+
+    // Format: licensePlate,make,model,year,status[,type,<type fields>] with the type fields of
+    // BulkImporter's rows (CAR,seats / SPORTCAR,seats,horsepower,hasTurbo / MOTORCYCLE,hasSidecar /
+    // TRUCK,cargoCapacity). Older lines without a type load as 4-seat Cars.
+    // Returns null for a line it cannot read (bad plate, year or status, missing fields).
+    public static Vehicle parseVehicle(ByteBuffer b, int start, int end) {
+        try {
+            return parseVehicleFields(b, start, end);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Vehicle parseVehicleFields(ByteBuffer b, int start, int end) {
+        int c1 = indexOf(b, start, end, (byte) ',');
+        int c2 = indexOf(b, c1 + 1, end, (byte) ',');
+        int c3 = indexOf(b, c2 + 1, end, (byte) ',');
+        int c4 = indexOf(b, c3 + 1, end, (byte) ',');
+        if (c1 < 0 || c2 < 0 || c3 < 0 || c4 < 0) {
+            return null;
+        }
+        int c5 = indexOf(b, c4 + 1, end, (byte) ',');
+        String make = string(b, c1 + 1, c2);
+        String model = string(b, c2 + 1, c3);
+        int year = parseInt(b, c3 + 1, c4);
+        Vehicle.VehicleStatus status = Vehicle.VehicleStatus.valueOf(string(b, c4 + 1, c5 < 0 ? end : c5));
+        Vehicle vehicle = (c5 < 0) ? new Car(make, model, year, 4) : typedVehicle(b, c5 + 1, end, make, model, year);
+        if (vehicle == null) {
+            return null;
+        }
+        vehicle.setLicensePlate(string(b, start, c1));
+        vehicle.setStatus(status);
+        return vehicle;
+    }
+
+    // The type and its fields, from the byte range after the status; null if they are malformed.
+    private static Vehicle typedVehicle(ByteBuffer b, int start, int end, String make, String model, int year) {
+        try {
+            return typedVehicleFields(b, start, end, make, model, year);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Vehicle typedVehicleFields(ByteBuffer b, int start, int end, String make, String model, int year) {
+        int c1 = indexOf(b, start, end, (byte) ',');
+        if (c1 < 0) {
+            return null;
+        }
+        String type = string(b, start, c1);
+        int c2 = indexOf(b, c1 + 1, end, (byte) ',');
+        switch (type) {
+            case "CAR":
+                return new Car(make, model, year, parseInt(b, c1 + 1, end));
+            case "SPORTCAR":
+                int c3 = (c2 < 0) ? -1 : indexOf(b, c2 + 1, end, (byte) ',');
+                if (c3 < 0) {
+                    return null;
+                }
+                return new SportCar(make, model, year, parseInt(b, c1 + 1, c2), parseInt(b, c2 + 1, c3),
+                        Boolean.parseBoolean(string(b, c3 + 1, end)));
+            case "MOTORCYCLE":
+                return new Motorcycle(make, model, year, Boolean.parseBoolean(string(b, c1 + 1, end)));
+            case "TRUCK":
+                return new Truck(make, model, year, Double.parseDouble(string(b, c1 + 1, end)));
+            default:
+                return null;
+        }
+    }
+
+    // Format: customerId,name (the name may itself contain commas). Returns null for a line
+    // without a comma or with a bad id.
+    public static Customer parseCustomer(ByteBuffer b, int start, int end) {
+        int comma = indexOf(b, start, end, (byte) ',');
+        if (comma < 0) {
+            return null;
+        }
+        try {
+            return new Customer(parseInt(b, start, comma), string(b, comma + 1, end));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Counts the lines parser leaves out (returns null for) in skipped.
+    public static <T> LineParser<T> counting(LineParser<T> parser, AtomicLong skipped) {
+        return (b, start, end) -> {
+            T value = parser.parse(b, start, end);
+            if (value == null) {
+                skipped.incrementAndGet();
+            }
+            return value;
+        };
+    }
+
+    // Builds a parser for rental records files, linking each record to the loaded vehicle and
+    // customer. Records naming an unknown vehicle or customer are left out and counted.
+    // Formats: RENT|RETURN,licensePlate,customerId,date,amount and STATUS,licensePlate,status,
+    // plus the older "RENT | Plate: ... | Customer: <name> | Date: ... | Amount: $..." lines.
+    // Plates are looked up by their PlateCodec code, read straight from the bytes.
+    public static LineParser<RecordEntry> recordParser(IntFunction<Vehicle> vehiclesByPlate,
+            IntFunction<Customer> customersById, Function<String, Customer> customersByName, AtomicLong skipped) {
+        return (b, start, end) -> {
+            String type;
+            if (startsWith(b, start, end, RETURN)) {
+                type = "RETURN";
+            } else if (startsWith(b, start, end, RENT)) {
+                type = "RENT";
+            } else if (startsWith(b, start, end, STATUS)) {
+                type = "STATUS";
+            } else {
+                skipped.incrementAndGet();
+                return null;
+            }
+            int fieldStart = start + type.length();
+            RecordEntry entry;
+            try {
+                entry = (fieldStart < end && b.get(fieldStart) == ',')
+                        ? parseRecordFields(b, fieldStart + 1, end, type, vehiclesByPlate, customersById)
+                        : parseLegacyRecord(b, fieldStart, end, type, vehiclesByPlate, customersByName);
+            } catch (RuntimeException e) {
+                entry = null; // Malformed number, date or status.
+            }
+            if (entry == null || (entry.record == null && !type.equals("STATUS"))) {
+                skipped.incrementAndGet();
+            }
+            return entry;
+        };
+    }
+
+    private static RecordEntry parseRecordFields(ByteBuffer b, int start, int end, String type,
+            IntFunction<Vehicle> vehiclesByPlate, IntFunction<Customer> customersById) {
+        int c1 = indexOf(b, start, end, (byte) ',');
+        if (c1 < 0) {
+            return null;
+        }
+        Vehicle vehicle = vehiclesByPlate.apply(PlateCodec.encode(b, start, c1));
+        if (vehicle == null) {
+            return null;
+        }
+        if (type.equals("STATUS")) {
+            return new RecordEntry(vehicle, Vehicle.VehicleStatus.valueOf(string(b, c1 + 1, end)), null);
+        }
+        int c2 = indexOf(b, c1 + 1, end, (byte) ',');
+        int c3 = indexOf(b, c2 + 1, end, (byte) ',');
+        if (c2 < 0 || c3 < 0) {
+            return null;
+        }
+        Customer customer = customersById.apply(parseInt(b, c1 + 1, c2));
+        LocalDate date = parseDate(b, c2 + 1, c3);
+        double amount = Double.parseDouble(string(b, c3 + 1, end));
+        return newEntry(vehicle, customer, date, amount, type);
+    }
+
+    private static RecordEntry parseLegacyRecord(ByteBuffer b, int start, int end, String type,
+            IntFunction<Vehicle> vehiclesByPlate, Function<String, Customer> customersByName) {
+        Vehicle vehicle = vehiclesByPlate.apply(PlateCodec.encode(labelled(b, start, end, PLATE)));
+        if (vehicle == null || type.equals("STATUS")) {
+            return null;
+        }
+        Customer customer = customersByName.apply(labelled(b, start, end, CUSTOMER));
+        String date = labelled(b, start, end, DATE);
+        String amount = labelled(b, start, end, AMOUNT);
+        if (date == null || amount == null) {
+            return null;
+        }
+        return newEntry(vehicle, customer, LocalDate.parse(date), Double.parseDouble(amount), type);
+    }
+
+    // Without the customer the record cannot be rebuilt, but the status change still applies.
+    private static RecordEntry newEntry(Vehicle vehicle, Customer customer, LocalDate date, double amount, String type) {
+        Vehicle.VehicleStatus status = type.equals("RENT") ? Vehicle.VehicleStatus.RENTED : Vehicle.VehicleStatus.AVAILABLE;
+        RentalRecord record = (customer == null) ? null : new RentalRecord(vehicle, customer, date, amount, type);
+        return new RecordEntry(vehicle, status, record);
+    }
+
+    // --- Byte helpers ---
+
+    // Returns the value following the label, up to the next " |" or the end of the line.
+    private static String labelled(ByteBuffer b, int start, int end, byte[] label) {
+        int at = indexOf(b, start, end, label);
+        if (at < 0) {
+            return null;
+        }
+        int valueStart = at + label.length;
+        int valueEnd = indexOf(b, valueStart, end, (byte) '|');
+        valueEnd = (valueEnd < 0) ? end : valueEnd;
+        while (valueEnd > valueStart && b.get(valueEnd - 1) == ' ') {
+            valueEnd--;
+        }
+        return string(b, valueStart, valueEnd);
+    }
+
+    static int indexOf(ByteBuffer b, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (b.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer b, int from, int end, byte[] value) {
+        for (int i = from; i <= end - value.length; i++) {
+            if (startsWith(b, i, end, value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer b, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String string(ByteBuffer b, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = b.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int parseInt(ByteBuffer b, int start, int end) {
+        while (start < end && b.get(start) == ' ') {
+            start++;
+        }
+        boolean negative = start < end && b.get(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i >= end) {
+            throw new NumberFormatException("Empty number");
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = b.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number: " + string(b, start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // Format: yyyy-MM-dd
+    private static LocalDate parseDate(ByteBuffer b, int start, int end) {
+        if (end - start != 10 || b.get(start + 4) != '-' || b.get(start + 7) != '-') {
+            return LocalDate.parse(string(b, start, end));
+        }
+        return LocalDate.of(parseInt(b, start, start + 4), parseInt(b, start + 5, start + 7),
+                parseInt(b, start + 8, start + 10));
+    }
+}
@@ -0,0 +1,72 @@
+import java.time.LocalDate;
+
+// A change to the fleet, as published to RentalSystem.subscribe listeners. Events are
+// numbered in publication order; one vehicle's events are always in the order they happened.
+public final class RentalEvent {
+
+    public enum Type {
+        // A vehicle joined the fleet; getStatus() is its initial status.
+        VEHICLE_ADDED,
+        // getCustomer(), getDate() and getAmount() describe the rental or return.
+        RENTED,
+        RETURNED,
+        // Any other status change (maintenance, reservations coming due, ...).
+        STATUS_CHANGED
+    }
+
+    private final long seq;
+    private final Type type;
+    private final Vehicle vehicle;
+    private final Vehicle.VehicleStatus status;
+    private final Customer customer;
+    private final LocalDate date;
+    private final double amount;
+
+    RentalEvent(long seq, Type type, Vehicle vehicle, Vehicle.VehicleStatus status, Customer customer,
+            LocalDate date, double amount) {
+        this.seq = seq;
+        this.type = type;
+        this.vehicle = vehicle;
+        this.status = status;
+        this.customer = customer;
+        this.date = date;
+        this.amount = amount;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    // The vehicle's status right after the change.
+    public Vehicle.VehicleStatus getStatus() {
+        return status;
+    }
+
+    // Null unless the event is a rent or return.
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    // The rental amount, or the extra fees of a return.
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + seq + " " + type + " " + vehicle.getLicensePlate() + " " + status
+                + ((customer == null) ? "" : " " + customer.getCustomerId() + " " + date + " " + amount);
+    }
+}
@@ -0,0 +1,12 @@
+import java.util.List;
+
+// Receives RentalEvents on its subscription's own thread, in order and in batches.
+public interface RentalEventListener {
+    // The batch list is reused after the call returns; copy what you keep.
+    void onEvents(List<RentalEvent> batch);
+
+    // Called when the listener fell so far behind that count events were overwritten
+    // before it could read them; delivery continues with the oldest event still held.
+    default void onMissed(long count) {
+    }
+}
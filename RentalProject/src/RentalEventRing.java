@@ -0,0 +1,191 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Lock-free ring buffer carrying RentalEvents from any number of publishing threads to any
+// number of subscribers. Publishing claims a sequence number with one atomic increment and
+// stores the event in its slot; it never waits, whoever is subscribed. Each subscription has
+// its own cursor and thread, which reads every event published since its last batch and
+// hands them to the listener together, backing off while there is nothing new.
+// A subscriber that falls a whole ring behind loses the overwritten events: it is told how
+// many through onMissed and resumes at the oldest event still held, so a slow consumer never
+// holds back the rentals or the other subscribers.
+public class RentalEventRing {
+    // Longest a subscription thread sleeps between checks when idle.
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<RentalEvent> slots;
+    private final int mask;
+    // Next sequence number to hand out.
+    private final AtomicLong next = new AtomicLong();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // capacity is rounded up to a power of two.
+    public RentalEventRing(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // True while someone is subscribed; publishers skip building events otherwise.
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(RentalEvent.Type type, Vehicle vehicle, Vehicle.VehicleStatus status, Customer customer,
+            LocalDate date, double amount) {
+        long seq = next.getAndIncrement();
+        RentalEvent event = new RentalEvent(seq, type, vehicle, status, customer, date, amount);
+        int index = (int) seq & mask;
+        // A publisher a whole lap ahead may have filled the slot already; never go back.
+        RentalEvent current;
+        do {
+            current = slots.get(index);
+            if (current != null && current.getSeq() > seq) {
+                return;
+            }
+        } while (!slots.compareAndSet(index, current, event));
+    }
+
+    // Delivers every event published from now on to listener, up to maxBatch per call, on a
+    // new daemon thread.
+    public Subscription subscribe(RentalEventListener listener, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        Subscription subscription = new Subscription(listener, maxBatch, next.get());
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    // Stops every subscription after it has delivered what was already published.
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public class Subscription {
+        private final RentalEventListener listener;
+        private final List<RentalEvent> batch;
+        private final int maxBatch;
+        private final Thread thread;
+        // Next sequence number this subscriber reads; written only by its thread.
+        private volatile long cursor;
+        private volatile long delivered;
+        private volatile long missed;
+        private volatile boolean closed;
+
+        private Subscription(RentalEventListener listener, int maxBatch, long cursor) {
+            this.listener = listener;
+            this.maxBatch = maxBatch;
+            this.batch = new ArrayList<>(maxBatch);
+            this.cursor = cursor;
+            this.thread = new Thread(this::run, "rental-events");
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            long idleNanos = 0;
+            while (true) {
+                boolean stopping = closed;
+                int count = poll();
+                if (count > 0) {
+                    idleNanos = 0;
+                } else if (stopping) {
+                    return;
+                } else {
+                    idleNanos = Math.min(Math.max(idleNanos * 2, 1000), MAX_IDLE_NANOS);
+                    LockSupport.parkNanos(this, idleNanos);
+                }
+            }
+        }
+
+        // Delivers up to maxBatch events from the cursor; returns how many were delivered or
+        // skipped because they were overwritten.
+        private int poll() {
+            long seq = cursor;
+            long oldest = next.get() - slots.length();
+            if (seq < oldest) {
+                lapped(seq, oldest);
+                return (int) Math.min(Integer.MAX_VALUE, oldest - seq);
+            }
+            batch.clear();
+            while (batch.size() < maxBatch) {
+                RentalEvent event = slots.get((int) seq & mask);
+                // Not stored yet (or not published at all); if it was overwritten instead,
+                // the lap check catches up on the next poll.
+                if (event == null || event.getSeq() != seq) {
+                    break;
+                }
+                batch.add(event);
+                seq++;
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            cursor = seq;
+            try {
+                listener.onEvents(batch);
+            } catch (RuntimeException e) {
+                System.out.println("Error in rental event listener: " + e.getMessage());
+            }
+            delivered += batch.size();
+            return batch.size();
+        }
+
+        private void lapped(long from, long resumeAt) {
+            cursor = resumeAt;
+            missed += resumeAt - from;
+            try {
+                listener.onMissed(resumeAt - from);
+            } catch (RuntimeException e) {
+                System.out.println("Error in rental event listener: " + e.getMessage());
+            }
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        public long getMissed() {
+            return missed;
+        }
+
+        // Events published that this subscriber has not read yet.
+        public long getLag() {
+            return Math.max(0, next.get() - cursor);
+        }
+
+        // Stops delivery once the events already published are delivered, and waits for it
+        // (unless called from a listener).
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
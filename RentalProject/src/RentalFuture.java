@@ -0,0 +1,13 @@
+import java.util.concurrent.CompletableFuture;
+
+// Result of an asynchronous rent or return. It completes with true as soon as the status
+// change is applied in memory, or false if the vehicle was not in the required status.
+// persisted() completes once the rental record has been written to the journal (false if
+// there was nothing to write), or exceptionally if the write failed.
+public class RentalFuture extends CompletableFuture<Boolean> {
+    private final CompletableFuture<Boolean> persisted = new CompletableFuture<>();
+
+    public CompletableFuture<Boolean> persisted() {
+        return persisted;
+    }
+}
@@ -1,34 +1,379 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class RentalHistory {
-    private List<RentalRecord> rentalRecords = new ArrayList<>();
+    // "objects" (default) keeps the records as given; "columns" stores them in primitive
+    // columns and hands out views, for histories too large to keep as objects.
+    static final String STORAGE_PROPERTY = "rental.history.storage";
+
+    // Passed to RecordVisitor for a record without a date.
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    // Records visited per read lock acquisition by forEach, so appends are not held off long.
+    private static final int VISIT_CHUNK = 1 << 12;
+
+    // Receives one record's fields, without a RentalRecord being built for it.
+    public interface RecordVisitor {
+        void visit(Vehicle vehicle, Customer customer, int epochDay, long cents, String recordType);
+    }
+
+    private final RecordStore rentalRecords;
+    // Records are appended from many threads; queries share the read side.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Posting lists: positions in rentalRecords, in ascending order, per plate and per customer id.
+    private final IntObjectMap<IntList> positionsByPlate = new IntObjectMap<>(); // key: PlateCodec code
+    private final IntObjectMap<CustomerPostings> positionsByCustomer = new IntObjectMap<>();
+    // Revenue rollups, updated with every appended record.
+    private final RevenueAggregates revenue = new RevenueAggregates();
+
+    // Set while older records are loaded in the background (see deferLoading): records added
+    // meanwhile wait in pending, and queries wait for loading to count down.
+    private List<RentalRecord> pending;
+    private volatile CountDownLatch loading;
+
+    // Loads at least this large rebuild the revenue rollups in parallel.
+    private static final int PARALLEL_REVENUE_THRESHOLD = 1 << 16;
+
+    // A customer's record positions, plus the text name queries match against.
+    private static class CustomerPostings {
+        final String searchText; // lower-cased toString() of the customer as first seen
+        final IntList positions = new IntList();
+
+        CustomerPostings(Customer customer) {
+            this.searchText = customer.toString().toLowerCase();
+        }
+    }
+
+    public RentalHistory() {
+        this("columns".equalsIgnoreCase(System.getProperty(STORAGE_PROPERTY))
+                ? new ColumnarRecordStore() : new ObjectRecordStore());
+    }
+
+    RentalHistory(RecordStore store) {
+        this.rentalRecords = store;
+    }
 
     public void addRecord(RentalRecord record) {
-        rentalRecords.add(record);
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.add(record);
+            } else {
+                append(record, true);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends records in order under a single lock acquisition (used when loading).
+    public void addRecords(List<RentalRecord> records) {
+        RevenueAggregates loaded = rollUp(records);
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.addAll(records);
+                return;
+            }
+            appendAll(records, loaded);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Makes the history wait for older records: the ones added from now on are held back
+    // until finishLoading supplies those they follow, and queries block until then. Lets
+    // startup go on while a large history is read in the background.
+    void deferLoading() {
+        lock.writeLock().lock();
+        try {
+            if (pending == null) {
+                pending = new ArrayList<>();
+                loading = new CountDownLatch(1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends the older records, then the ones held back, and releases the waiting queries.
+    void finishLoading(List<RentalRecord> older) {
+        RevenueAggregates loaded = rollUp(older);
+        CountDownLatch latch;
+        lock.writeLock().lock();
+        try {
+            if (pending == null) {
+                return;
+            }
+            appendAll(older, loaded);
+            appendAll(pending, null);
+            pending = null;
+            latch = loading;
+            loading = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        latch.countDown();
+    }
+
+    // True while older records are still being loaded.
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    // Called with the write lock held; loaded is the records' revenue rolled up in advance, or null.
+    private void appendAll(List<RentalRecord> records, RevenueAggregates loaded) {
+        for (RentalRecord record : records) {
+            append(record, loaded == null);
+        }
+        if (loaded != null) {
+            revenue.merge(loaded);
+        }
+    }
+
+    // Large loads build the revenue rollups in parallel, one partial set per chunk, then merge
+    // them; returns null for smaller ones, whose records are rolled up as they are appended.
+    private static RevenueAggregates rollUp(List<RentalRecord> records) {
+        RevenueAggregates loaded = null;
+        if (records.size() >= PARALLEL_REVENUE_THRESHOLD) {
+            int chunks = Runtime.getRuntime().availableProcessors() * 4;
+            int chunkSize = (records.size() + chunks - 1) / chunks;
+            loaded = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> {
+                        RevenueAggregates partial = new RevenueAggregates();
+                        int end = Math.min(records.size(), (c + 1) * chunkSize);
+                        for (int i = c * chunkSize; i < end; i++) {
+                            partial.add(records.get(i));
+                        }
+                        return partial;
+                    })
+                    .reduce((a, b) -> {
+                        a.merge(b);
+                        return a;
+                    })
+                    .orElseGet(RevenueAggregates::new);
+        }
+        return loaded;
+    }
+
+    // Takes the read lock for a query, once any background load has completed.
+    private void lockForQuery() {
+        awaitLoaded();
+        lock.readLock().lock();
+    }
+
+    // Blocks until any background load has completed. Loading is deferred only once, at
+    // startup, so afterwards queries no longer wait.
+    void awaitLoaded() {
+        CountDownLatch latch = loading;
+        if (latch != null) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
+    // Called with the write lock held; addRevenue is false when the caller rolls up revenue itself.
+    private void append(RentalRecord record, boolean addRevenue) {
+        int position = rentalRecords.add(record);
+        int plate = record.getVehicle().getPlateCode();
+        if (plate != PlateCodec.INVALID) {
+            IntList positions = positionsByPlate.get(plate);
+            if (positions == null) {
+                positions = new IntList();
+                positionsByPlate.put(plate, positions);
+            }
+            positions.add(position);
+        }
+        Customer customer = record.getCustomer();
+        CustomerPostings postings = positionsByCustomer.get(customer.getCustomerId());
+        if (postings == null) {
+            postings = new CustomerPostings(customer);
+            positionsByCustomer.put(customer.getCustomerId(), postings);
+        }
+        postings.positions.add(position);
+        if (addRevenue) {
+            revenue.add(record);
+        }
+    }
+
+    // Called with the read lock held.
+    private List<RentalRecord> recordsAt(IntList positions) {
+        List<RentalRecord> result = new ArrayList<>(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            result.add(rentalRecords.get(positions.get(i)));
+        }
+        return result;
+    }
+
+    public int size() {
+        lockForQuery();
+        try {
+            return rentalRecords.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Visits the records at positions [from, to) in history order. Records are only ever
+    // appended, so a position keeps its record; to must not exceed size().
+    public void forEach(int from, int to, RecordVisitor visitor) {
+        for (int start = from; start < to; start += VISIT_CHUNK) {
+            lockForQuery();
+            try {
+                rentalRecords.forEach(start, Math.min(to, start + VISIT_CHUNK), visitor);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    // Visits every record added so far, in history order. Scans should prefer this to
+    // getRentalHistory, which builds an object per record with the columnar store.
+    public void forEach(RecordVisitor visitor) {
+        forEach(0, size(), visitor);
+    }
+
+    // Returns a copy so callers can iterate while other threads keep adding records.
     public List<RentalRecord> getRentalHistory() {
-        return rentalRecords;
+        lockForQuery();
+        try {
+            List<RentalRecord> result = new ArrayList<>(rentalRecords.size());
+            for (int i = 0; i < rentalRecords.size(); i++) {
+                result.add(rentalRecords.get(i));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
+    // Substring match against the customer's "Customer ID: ... | Name: ..." text. Checks each
+    // distinct customer once rather than every record; prefer the exact-id query when possible.
     public List<RentalRecord> getRentalRecordsByCustomer(String customerName) {
-        List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getCustomer().toString().toLowerCase().contains(customerName.toLowerCase())) {
-                result.add(record);
+        final String query = customerName.toLowerCase();
+        final IntList matches = new IntList();
+        final int[] matchedCustomers = new int[1];
+        lockForQuery();
+        try {
+            positionsByCustomer.forEach((id, postings) -> {
+                if (postings.searchText.contains(query)) {
+                    matches.addAll(postings.positions);
+                    matchedCustomers[0]++;
+                }
+            });
+            if (matchedCustomers[0] > 1) {
+                matches.sort(); // Restore history order across customers.
             }
+            return recordsAt(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Records of exactly this customer id, in history order.
+    public List<RentalRecord> getRentalRecordsByCustomerId(int customerId) {
+        lockForQuery();
+        try {
+            CustomerPostings postings = positionsByCustomer.get(customerId);
+            return (postings == null) ? new ArrayList<>() : recordsAt(postings.positions);
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
 
     public List<RentalRecord> getRentalRecordsByVehicle(String licensePlate) {
-        List<RentalRecord> result = new ArrayList<>();
-        for (RentalRecord record : rentalRecords) {
-            if (record.getVehicle().getLicensePlate().equalsIgnoreCase(licensePlate)) {
-                result.add(record);
-            }
+        int code = PlateCodec.encode(licensePlate);
+        if (code == PlateCodec.INVALID) {
+            return new ArrayList<>();
+        }
+        lockForQuery();
+        try {
+            IntList positions = positionsByPlate.get(code);
+            return (positions == null) ? new ArrayList<>() : recordsAt(positions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // --- Revenue, in cents, read from the rollups ---
+
+    public long getTotalRevenueCents() {
+        lockForQuery();
+        try {
+            return revenue.getTotalCents();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRevenueCents(LocalDate day) {
+        lockForQuery();
+        try {
+            return revenue.getDayCents(day);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // From `from` to `to`, both inclusive.
+    public long getRevenueCents(LocalDate from, LocalDate to) {
+        lockForQuery();
+        try {
+            return revenue.getRangeCents(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRevenueCents(YearMonth month) {
+        lockForQuery();
+        try {
+            return revenue.getMonthCents(month);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRevenueCents(VehicleType type) {
+        lockForQuery();
+        try {
+            return revenue.getTypeCents(type);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRevenueCentsByVehicle(String licensePlate) {
+        lockForQuery();
+        try {
+            return revenue.getVehicleCents(licensePlate);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getRevenueCentsByCustomerId(int customerId) {
+        lockForQuery();
+        try {
+            return revenue.getCustomerCents(customerId);
+        } finally {
+            lock.readLock().unlock();
         }
-        return result;
     }
-}
\ No newline at end of file
+}
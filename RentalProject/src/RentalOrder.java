@@ -0,0 +1,39 @@
+import java.time.LocalDate;
+
+// One rent or return in a batch: the vehicle, the customer, the date and the
+// rental amount (for rents) or extra fees (for returns).
+public class RentalOrder {
+    private final Vehicle vehicle;
+    private final Customer customer;
+    private final LocalDate date;
+    private final double amount;
+
+    public RentalOrder(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        this.vehicle = vehicle;
+        this.customer = customer;
+        this.date = date;
+        this.amount = amount;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "Plate: " + vehicle.getLicensePlate() + " | Customer: " + customer.getCustomerName()
+                + " | Date: " + date + " | Amount: $" + amount;
+    }
+}
@@ -22,12 +22,29 @@ public class RentalRecord {
     public Vehicle getVehicle(){
     	return vehicle;
     }
+
+    public LocalDate getRecordDate() {
+        return recordDate;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public String getRecordType() {
+        return recordType;
+    }
     
     @Override
     public String toString() {
-        return recordType + " | Plate: " + vehicle.getLicensePlate() + 
-               " | Customer: " + customer.getCustomerName() + 
-               " | Date: " + recordDate + 
-               " | Amount: $" + totalAmount;
+        return format(getRecordType(), getVehicle(), getCustomer(), getRecordDate(), getTotalAmount());
+    }
+
+    // The toString text of a record with these fields.
+    static String format(String recordType, Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        return recordType + " | Plate: " + vehicle.getLicensePlate() +
+               " | Customer: " + customer.getCustomerName() +
+               " | Date: " + date +
+               " | Amount: $" + amount;
     }
 }
\ No newline at end of file
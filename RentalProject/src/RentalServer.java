@@ -0,0 +1,224 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// HTTP front end serving many counter terminals at once against a shared RentalSystem.
+// Each request runs on its own virtual thread where the JVM has them (a cached thread pool
+// otherwise), so a request waiting for its record to be written costs no platform thread.
+// Responses are plain text, one item per line:
+//   GET  /vehicles?status=AVAILABLE[&type=CAR]     vehicles in a status ("plate,make,model,year,status")
+//   GET  /vehicles/<plate>                         one vehicle
+//   GET  /customers/<id>                           one customer ("id,name")
+//   GET  /customers?q=<name>[&limit=10]            name search
+//   POST /rent?plate=..&customer=..&amount=..[&date=YYYY-MM-DD]
+//   POST /return?plate=..&customer=..[&fees=..][&date=YYYY-MM-DD]
+// A rent or return sent with an Idempotency-Key header is applied once: a retry with the same
+// key gets the original answer (see RentalSystem.rentVehicleAsync(String, ...)).
+// Rent and return answer once the record is persisted: 200 OK, 409 if the vehicle is in the
+// wrong status, 404 for an unknown vehicle or customer, 400 for bad parameters, 503 from a
+// read-only replica, and 500 if the record could not be saved.
+public class RentalServer {
+    private final RentalSystem rentalSystem;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public RentalServer(RentalSystem rentalSystem, int port) throws IOException {
+        this.rentalSystem = rentalSystem;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = newPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/vehicles", this::handleVehicles);
+        server.createContext("/customers", this::handleCustomers);
+        server.createContext("/rent", exchange -> handleRental(exchange, true));
+        server.createContext("/return", exchange -> handleRental(exchange, false));
+    }
+
+    // Uses Executors.newVirtualThreadPerTaskExecutor (Java 21+) when available; looked up
+    // reflectively so the project still compiles for Java 8.
+    public static ExecutorService newPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "rental-server");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting requests, gives running ones up to delaySeconds to finish.
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    private void handleVehicles(HttpExchange exchange) throws IOException {
+        try {
+            String plate = pathArgument(exchange, "/vehicles");
+            if (plate != null) {
+                Vehicle vehicle = rentalSystem.findVehicleByPlate(plate);
+                if (vehicle == null) {
+                    send(exchange, 404, "Vehicle not found.");
+                } else {
+                    send(exchange, 200, format(vehicle));
+                }
+                return;
+            }
+            Map<String, String> params = params(exchange);
+            Vehicle.VehicleStatus status = Vehicle.VehicleStatus.valueOf(
+                    params.getOrDefault("status", "AVAILABLE").toUpperCase());
+            String type = params.get("type");
+            List<Vehicle> vehicles = (type == null) ? rentalSystem.findVehiclesByStatus(status)
+                    : rentalSystem.findVehiclesByStatus(status, VehicleType.valueOf(type.toUpperCase()));
+            StringBuilder body = new StringBuilder();
+            for (Vehicle vehicle : vehicles) {
+                body.append(format(vehicle)).append('\n');
+            }
+            send(exchange, 200, body.toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "Bad request: " + e.getMessage());
+        }
+    }
+
+    private void handleCustomers(HttpExchange exchange) throws IOException {
+        try {
+            String id = pathArgument(exchange, "/customers");
+            if (id != null) {
+                Customer customer = rentalSystem.findCustomerById(Integer.parseInt(id));
+                if (customer == null) {
+                    send(exchange, 404, "Customer not found.");
+                } else {
+                    send(exchange, 200, customer.getCustomerId() + "," + customer.getCustomerName());
+                }
+                return;
+            }
+            Map<String, String> params = params(exchange);
+            int limit = Integer.parseInt(params.getOrDefault("limit", "10"));
+            StringBuilder body = new StringBuilder();
+            for (Customer customer : rentalSystem.searchCustomersByName(params.get("q"), limit)) {
+                body.append(customer.getCustomerId()).append(',').append(customer.getCustomerName()).append('\n');
+            }
+            send(exchange, 200, body.toString());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "Bad request: " + e.getMessage());
+        }
+    }
+
+    private void handleRental(HttpExchange exchange, boolean rent) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, "Use POST.");
+            return;
+        }
+        Vehicle vehicle;
+        Customer customer;
+        LocalDate date;
+        double amount;
+        try {
+            Map<String, String> params = params(exchange);
+            vehicle = rentalSystem.findVehicleByPlate(params.get("plate"));
+            customer = rentalSystem.findCustomerById(Integer.parseInt(params.get("customer")));
+            date = params.containsKey("date") ? LocalDate.parse(params.get("date")) : LocalDate.now();
+            amount = Double.parseDouble(params.getOrDefault(rent ? "amount" : "fees", rent ? "" : "0"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            send(exchange, 400, "Bad request: " + e.getMessage());
+            return;
+        }
+        if (vehicle == null || customer == null) {
+            send(exchange, 404, (vehicle == null) ? "Vehicle not found." : "Customer not found.");
+            return;
+        }
+        String requestId = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        RentalFuture result = rent ? rentalSystem.rentVehicleAsync(requestId, vehicle, customer, date, amount)
+                : rentalSystem.returnVehicleAsync(requestId, vehicle, customer, date, amount);
+        boolean applied;
+        try {
+            applied = result.join();
+        } catch (CompletionException e) {
+            send(exchange, 500, "Error saving rental record: " + e.getCause().getMessage());
+            return;
+        }
+        if (!applied) {
+            // Refused because the system takes no changes at all, or because of the vehicle's status.
+            String blocked = rentalSystem.writeBlocker();
+            if (blocked != null) {
+                send(exchange, rentalSystem.isReadOnly() ? 503 : 500, blocked);
+            } else {
+                send(exchange, 409, rent ? "Vehicle is not available for renting." : "Vehicle is not rented.");
+            }
+            return;
+        }
+        try {
+            result.persisted().get();
+            send(exchange, 200, "OK");
+        } catch (ExecutionException e) {
+            send(exchange, 500, "Error saving rental record: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "Interrupted.");
+        }
+    }
+
+    private static String format(Vehicle vehicle) {
+        return vehicle.getLicensePlate() + "," + vehicle.getMake() + "," + vehicle.getModel() + ","
+                + vehicle.getYear() + "," + vehicle.getStatus();
+    }
+
+    // The path segment after the context ("/vehicles/ABC123" gives "ABC123"), or null.
+    private static String pathArgument(HttpExchange exchange, String context) {
+        String path = exchange.getRequestURI().getPath();
+        if (path.length() <= context.length() + 1) {
+            return null;
+        }
+        return path.substring(context.length() + 1);
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
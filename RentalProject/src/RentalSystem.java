@@ -1,211 +1,1961 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import javax.management.JMException;
 
 public class RentalSystem {
-    // Singleton instance.
-    private static RentalSystem instance;
-    
-    private List<Vehicle> vehicles = new ArrayList<>();
-    private List<Customer> customers = new ArrayList<>();
-    private RentalHistory rentalHistory = new RentalHistory();
+    // Number of lock stripes guarding vehicle status transitions (a power of two).
+    private static final int LOCK_STRIPES = 64;
+
+    // Returned by applyRent/applyReturn when the vehicle is not in the required status
+    // (or this is a read-only follower).
+    static final long REJECTED = Long.MIN_VALUE;
+    private static final String READ_ONLY = "This is a read-only replica.";
+    private static final String JOURNAL_FAILED = "A data file could not be written; no more changes are accepted.";
+
+    // Journal durability: -Drental.journal.durability=SYNC_EVERY_COMMIT, SYNC_INTERVAL or NO_SYNC,
+    // with -Drental.journal.syncMillis setting the fsync period for SYNC_INTERVAL.
+    private static final Journal.Durability DURABILITY = Journal.Durability.valueOf(
+            System.getProperty("rental.journal.durability", Journal.Durability.SYNC_INTERVAL.name()));
+    private static final long SYNC_MILLIS = Long.getLong("rental.journal.syncMillis", 100L);
+    // Asynchronous rents and returns waiting to be persisted before callers block.
+    private static final int ASYNC_QUEUE_CAPACITY = Integer.getInteger("rental.async.queueCapacity", 1024);
+    // Events held for subscribers that fall behind, and the most handed to a listener at once.
+    private static final int EVENT_RING_CAPACITY = Integer.getInteger("rental.events.capacity", 1 << 16);
+    private static final int EVENT_BATCH_SIZE = 256;
+    // Request ids remembered for retries (see DedupCache), and for how long.
+    private static final int DEDUP_CAPACITY = Integer.getInteger("rental.dedup.capacity", 100_000);
+    private static final long DEDUP_TTL_SECONDS = Long.getLong("rental.dedup.ttlSeconds", 600L);
+
+    // Data files; the three journals rotate into numbered segments when a snapshot is taken.
+    private static final String VEHICLES_FILE = "vehicles.txt";
+    private static final String CUSTOMERS_FILE = "customers.txt";
+    private static final String RECORDS_FILE = "rental_records.txt";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    // Text snapshots written before the binary format; still read if no binary one exists.
+    private static final String LEGACY_SNAPSHOT_FILE = "snapshot.txt";
+    private static final int SNAPSHOT_MAGIC = 0x52534E50; // "RSNP"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final String RESERVATIONS_FILE = "reservations.txt";
+
+    // Directory holding the data files, and the journals kept open on them.
+    private final Path dataDir;
+    private final Journal.Durability durability;
+    private Journal vehicleJournal;
+    private Journal customerJournal;
+    private Journal recordJournal;
+    private Journal reservationJournal;
+    // Completes the persisted futures of asynchronous rents and returns; started on first use.
+    private volatile PersistenceWriter recordWriter;
+
+    // Highest segment covered by the snapshot, highest segment on disk, and the snapshot timer.
+    private long snapshotSegment;
+    private long lastSegment;
+    private ScheduledExecutorService snapshotScheduler;
+
+    private List<Vehicle> vehicles = Collections.synchronizedList(new ArrayList<>());
+    private List<Customer> customers = Collections.synchronizedList(new ArrayList<>());
+    // Replaced only when a replica installs a fresh snapshot.
+    private volatile RentalHistory rentalHistory = new RentalHistory();
+
+    // Lookup indexes, kept in step with the lists above on every add.
+    // Plates are keyed by their PlateCodec code; customer ids are keyed as primitive ints.
+    private IntObjectMap<Vehicle> vehiclesByPlate = new IntObjectMap<>();
+    private final ReadWriteLock vehicleLock = new ReentrantReadWriteLock();
+    // Registered vehicles by status and type, moved on every status transition.
+    private final FleetIndex fleet = new FleetIndex();
+    private IntObjectMap<Customer> customersById = new IntObjectMap<>();
+    private final ReadWriteLock customerLock = new ReentrantReadWriteLock();
+    private final CustomerNameIndex customerNames = new CustomerNameIndex();
+
+    // Latency and throughput of the public operations and persistence writes (see RentalMetrics).
+    private final RentalMetrics metrics = new RentalMetrics();
+    private final RentalAnalytics analytics = new RentalAnalytics();
+
+    // Advance bookings. Reserving and cancelling share the read side of reservationLock (and
+    // take the vehicle's stripe); compacting the reservations journal takes the write side.
+    private final ReservationBook reservations = new ReservationBook();
+    private final ReadWriteLock reservationLock = new ReentrantReadWriteLock();
+    private final AtomicLong nextReservationId = new AtomicLong(1);
+
+    // Status transitions are serialized per plate, so different vehicles never contend.
+    private final Object[] vehicleLocks = new Object[LOCK_STRIPES];
+
+    // Replication to read-only followers (see startReplication). Every change takes the read
+    // side of replicationGate, outside all other locks, while it is applied and logged; a
+    // replication snapshot takes the write side, so it matches the log's last entry exactly.
+    private final ReadWriteLock replicationGate = new ReentrantReadWriteLock();
+    private volatile ReplicationLog replicationLog;
+    // Set on followers: changes come only from the primary, through applyReplicated.
+    private volatile boolean readOnly;
+
+    // Change events for subscribers, published where the change is journaled (or logged by
+    // the primary, on a follower), so each vehicle's events are in the order they happened.
+    private final RentalEventRing events = new RentalEventRing(EVENT_RING_CAPACITY);
+
+    // Results of the requests that carried a client request id, for answering their retries.
+    private final DedupCache<RentalFuture> requests = new DedupCache<>(DEDUP_CAPACITY, DEDUP_TTL_SECONDS,
+            TimeUnit.SECONDS);
 
     // Private constructor for Singleton pattern.
     private RentalSystem() {
+        this(Paths.get(""));
+    }
+
+    // Creates a system whose data files live in the given directory (used by tests and tools).
+    RentalSystem(Path dataDir) {
+        this(dataDir, DURABILITY);
+    }
+
+    // As above, with the journal durability given instead of read from the system properties.
+    RentalSystem(Path dataDir, Journal.Durability durability) {
+        this.dataDir = dataDir;
+        this.durability = durability;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            vehicleLocks[i] = new Object();
+        }
         loadData(); // Load previously saved data.
+        openJournals();
+        refreshReservations(LocalDate.now());
+    }
+
+    // Holder class: the JVM initializes it once, on first use, without explicit locking.
+    private static class InstanceHolder {
+        private static final RentalSystem INSTANCE = new RentalSystem();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::shutdown));
+            try {
+                INSTANCE.metrics.register("RentalSystem");
+            } catch (JMException e) {
+                System.out.println("Error registering metrics: " + e.getMessage());
+            }
+        }
     }
     
     // Public method to get the singleton instance.
     public static RentalSystem getInstance() {
-        if (instance == null) {
-            instance = new RentalSystem();
-        }
-        return instance;
+        return InstanceHolder.INSTANCE;
     }
 
     // Modified addVehicle method: checks for duplicate and returns boolean.
     public boolean addVehicle(Vehicle vehicle) {
-        if (findVehicleByPlate(vehicle.getLicensePlate()) != null) {
-            System.out.println("Vehicle with plate " + vehicle.getLicensePlate() + " already exists.");
-            return false;
+        long start = System.nanoTime();
+        try {
+            if (refusesWrites()) {
+                return false;
+            }
+            if (vehicle.getLicensePlate() == null) {
+                System.out.println("Vehicle has no license plate.");
+                return false;
+            }
+            long ticket = registerVehicle(vehicle, vehicleJournal);
+            if (ticket == REJECTED) {
+                System.out.println("Vehicle with plate " + vehicle.getLicensePlate() + " already exists.");
+                return false;
+            }
+            return ticket >= 0 && awaitSaved(vehicleJournal, ticket, "vehicle", RentalMetrics.Op.SAVE_VEHICLE);
+        } finally {
+            metrics.record(RentalMetrics.Op.ADD_VEHICLE, start);
         }
-        vehicles.add(vehicle);
-        saveVehicle(vehicle);
-        return true;
     }
 
     // Modified addCustomer method: checks for duplicate and returns boolean.
     public boolean addCustomer(Customer customer) {
-        if (findCustomerById(Integer.toString(customer.getCustomerId())) != null) {
-            System.out.println("Customer with ID " + customer.getCustomerId() + " already exists.");
-            return false;
+        long start = System.nanoTime();
+        try {
+            if (refusesWrites()) {
+                return false;
+            }
+            long ticket = registerCustomer(customer, customerJournal);
+            if (ticket == REJECTED) {
+                System.out.println("Customer with ID " + customer.getCustomerId() + " already exists.");
+                return false;
+            }
+            return ticket >= 0 && awaitSaved(customerJournal, ticket, "customer", RentalMetrics.Op.SAVE_CUSTOMER);
+        } finally {
+            metrics.record(RentalMetrics.Op.ADD_CUSTOMER, start);
+        }
+    }
+
+    // Adds the vehicle to the fleet and the plate index; returns false if the plate is taken.
+    private boolean registerVehicle(Vehicle vehicle) {
+        return registerVehicle(vehicle, null) != REJECTED;
+    }
+
+    // As above, but if a journal is given the vehicle's line is queued in it first, and a
+    // vehicle whose line cannot be queued is not added. Returns the ticket to wait on (0 when
+    // there is no journal), REJECTED if the plate is taken, or -1 on a save error.
+    // It is logged for the followers before anyone can look it up, so they learn of it
+    // before any of its rentals.
+    private long registerVehicle(Vehicle vehicle, Journal journal) {
+        replicationGate.readLock().lock();
+        vehicleLock.writeLock().lock();
+        try {
+            // A vehicle already registered with another system keeps its place there; its
+            // fleet slot belongs to that system's index.
+            if (vehiclesByPlate.containsKey(vehicle.getPlateCode()) || !vehicle.registerWith(this)) {
+                return REJECTED;
+            }
+            long ticket = 0;
+            if (journal != null) {
+                ticket = queueLine(journal, formatVehicle(vehicle));
+                if (ticket < 0) {
+                    vehicle.unregisterFrom(this);
+                    return ticket;
+                }
+            }
+            vehiclesByPlate.put(vehicle.getPlateCode(), vehicle);
+            vehicles.add(vehicle);
+            fleet.add(vehicle);
+            publish(RentalEvent.Type.VEHICLE_ADDED, vehicle, vehicle.getStatus(), null);
+            if (replicationLog != null) {
+                replicationLog.append(ReplicationLog.VEHICLE, formatVehicle(vehicle));
+            }
+            return ticket;
+        } finally {
+            vehicleLock.writeLock().unlock();
+            replicationGate.readLock().unlock();
+        }
+    }
+
+    // Adds the customer to the list and the id index; returns false if the id is taken.
+    private boolean registerCustomer(Customer customer) {
+        return registerCustomer(customer, null) != REJECTED;
+    }
+
+    // As registerVehicle(Vehicle, Journal), for a customer.
+    private long registerCustomer(Customer customer, Journal journal) {
+        replicationGate.readLock().lock();
+        customerLock.writeLock().lock();
+        try {
+            if (customersById.containsKey(customer.getCustomerId())) {
+                return REJECTED;
+            }
+            long ticket = 0;
+            if (journal != null) {
+                ticket = queueLine(journal, formatCustomer(customer));
+                if (ticket < 0) {
+                    return ticket;
+                }
+            }
+            customersById.put(customer.getCustomerId(), customer);
+            customers.add(customer);
+            customerNames.add(customer);
+            if (replicationLog != null) {
+                replicationLog.append(ReplicationLog.CUSTOMER, formatCustomer(customer));
+            }
+            return ticket;
+        } finally {
+            customerLock.writeLock().unlock();
+            replicationGate.readLock().unlock();
         }
-        customers.add(customer);
-        saveCustomer(customer);
-        return true;
+    }
+
+    // Sets the status and moves the vehicle in the fleet index; called with its stripe held.
+    private void transition(Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        Vehicle.VehicleStatus oldStatus = vehicle.getStatus();
+        vehicle.setStatus(newStatus);
+        fleet.move(vehicle, oldStatus, newStatus);
+    }
+
+    // Returns the lock stripe that serializes status changes for this vehicle's plate.
+    private Object lockFor(Vehicle vehicle) {
+        int code = vehicle.getPlateCode();
+        int h = (code != PlateCodec.INVALID) ? code * 0x9E3779B9 : System.identityHashCode(vehicle);
+        return vehicleLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
     }
 
     // Modified rentVehicle method: returns true if rental is successful.
     public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
-            vehicle.setStatus(Vehicle.VehicleStatus.RENTED);
-            RentalRecord record = new RentalRecord(vehicle, customer, date, amount, "RENT");
-            rentalHistory.addRecord(record);
-            saveRecord(record);
+        long start = System.nanoTime();
+        try {
+            if (refusesWrites()) {
+                return false;
+            }
+            long ticket = applyRent(vehicle, customer, date, amount);
+            if (ticket == REJECTED) {
+                System.out.println("Vehicle is not available for renting.");
+                return false;
+            }
+            if (ticket < 0 || !awaitSaved(recordJournal, ticket, "rental record", RentalMetrics.Op.SAVE_RECORD)) {
+                return false;
+            }
             System.out.println("Vehicle rented to " + customer.getCustomerName());
             return true;
-        } else {
-            System.out.println("Vehicle is not available for renting.");
-            return false;
+        } finally {
+            metrics.record(RentalMetrics.Op.RENT_VEHICLE, start);
         }
     }
 
     // Modified returnVehicle method: returns true if returning is successful.
     public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
-        if (vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
-            vehicle.setStatus(Vehicle.VehicleStatus.AVAILABLE);
+        long start = System.nanoTime();
+        try {
+            if (refusesWrites()) {
+                return false;
+            }
+            long ticket = applyReturn(vehicle, customer, date, extraFees);
+            if (ticket == REJECTED) {
+                System.out.println("Vehicle is not rented.");
+                return false;
+            }
+            if (ticket < 0 || !awaitSaved(recordJournal, ticket, "rental record", RentalMetrics.Op.SAVE_RECORD)) {
+                return false;
+            }
+            System.out.println("Vehicle returned by " + customer.getCustomerName());
+            return true;
+        } finally {
+            metrics.record(RentalMetrics.Op.RETURN_VEHICLE, start);
+        }
+    }
+
+    // Non-blocking rentVehicle: the returned future completes as soon as the rental is applied
+    // in memory, and its persisted() future once the record is written by a background thread.
+    // Blocks only if too many records are waiting to be written.
+    public RentalFuture rentVehicleAsync(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        long start = System.nanoTime();
+        try {
+            return submit(applyRent(vehicle, customer, date, amount));
+        } finally {
+            metrics.record(RentalMetrics.Op.RENT_VEHICLE_ASYNC, start);
+        }
+    }
+
+    // Non-blocking returnVehicle; see rentVehicleAsync.
+    public RentalFuture returnVehicleAsync(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        long start = System.nanoTime();
+        try {
+            return submit(applyReturn(vehicle, customer, date, extraFees));
+        } finally {
+            metrics.record(RentalMetrics.Op.RETURN_VEHICLE_ASYNC, start);
+        }
+    }
+
+    // --- Idempotent requests ---
+    // Variants of the mutators taking a client-chosen request id. A retry with the same id
+    // (within rental.dedup.ttlSeconds) is not applied again: it returns the first call's
+    // result, waiting for it if that call is still running. A null id disables the check.
+
+    public boolean rentVehicle(String requestId, Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        return deduplicated(requestId, "RENT", plateOf(vehicle),
+                () -> completed(rentVehicle(vehicle, customer, date, amount))).join();
+    }
+
+    public boolean returnVehicle(String requestId, Vehicle vehicle, Customer customer, LocalDate date,
+            double extraFees) {
+        return deduplicated(requestId, "RETURN", plateOf(vehicle),
+                () -> completed(returnVehicle(vehicle, customer, date, extraFees))).join();
+    }
+
+    public RentalFuture rentVehicleAsync(String requestId, Vehicle vehicle, Customer customer, LocalDate date,
+            double amount) {
+        return deduplicated(requestId, "RENT", plateOf(vehicle),
+                () -> rentVehicleAsync(vehicle, customer, date, amount));
+    }
+
+    public RentalFuture returnVehicleAsync(String requestId, Vehicle vehicle, Customer customer, LocalDate date,
+            double extraFees) {
+        return deduplicated(requestId, "RETURN", plateOf(vehicle),
+                () -> returnVehicleAsync(vehicle, customer, date, extraFees));
+    }
+
+    public boolean addVehicle(String requestId, Vehicle vehicle) {
+        return deduplicated(requestId, "ADD_VEHICLE", plateOf(vehicle), () -> completed(addVehicle(vehicle))).join();
+    }
+
+    public boolean addCustomer(String requestId, Customer customer) {
+        Integer customerId = (customer == null) ? null : customer.getCustomerId();
+        return deduplicated(requestId, "ADD_CUSTOMER", customerId, () -> completed(addCustomer(customer))).join();
+    }
+
+    public boolean changeStatus(String requestId, Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        return deduplicated(requestId, "STATUS", plateOf(vehicle),
+                () -> completed(changeStatus(vehicle, newStatus))).join();
+    }
+
+    // The cache key also names the operation and what it acts on, so an id reused for a
+    // different request runs that request instead of returning the first one's result.
+    private RentalFuture deduplicated(String requestId, String operation, Object subject,
+            Supplier<RentalFuture> request) {
+        if (requestId == null) {
+            return request.get();
+        }
+        return requests.execute(requestId + '|' + operation + '|' + subject, request);
+    }
+
+    private static String plateOf(Vehicle vehicle) {
+        return (vehicle == null) ? null : vehicle.getLicensePlate();
+    }
+
+    // The result of a call that has already finished, persisting included.
+    private static RentalFuture completed(boolean success) {
+        RentalFuture future = new RentalFuture();
+        future.complete(success);
+        future.persisted().complete(success);
+        return future;
+    }
+
+    // Requests answered from the request id cache instead of being applied again.
+    public long getDeduplicatedRequests() {
+        return requests.getHits();
+    }
+
+    private RentalFuture submit(long ticket) {
+        RentalFuture future = new RentalFuture();
+        if (ticket == REJECTED) {
+            future.complete(false);
+            future.persisted().complete(false);
+            return future;
+        }
+        if (ticket < 0) {
+            // Nothing was applied: the record could not even be queued.
+            IOException error = new IOException("Error saving rental record.");
+            future.completeExceptionally(error);
+            future.persisted().completeExceptionally(error);
+            return future;
+        }
+        recordWriter().submit(ticket, future.persisted());
+        future.complete(true);
+        return future;
+    }
+
+    private PersistenceWriter recordWriter() {
+        PersistenceWriter writer = recordWriter;
+        if (writer == null) {
+            synchronized (this) {
+                writer = recordWriter;
+                if (writer == null) {
+                    writer = new PersistenceWriter(recordJournal, ASYNC_QUEUE_CAPACITY);
+                    recordWriter = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    // Rents the vehicle if it is available or reserved, and nobody else has booked it for the
+    // date (a reserved one must be booked by this customer), and queues the record without
+    // waiting for the write. The status check, transition and record are atomic per vehicle.
+    // Returns the journal ticket, or REJECTED if the vehicle is not available.
+    private long applyRent(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        if (writeBlocker() != null) {
+            return REJECTED;
+        }
+        replicationGate.readLock().lock();
+        try {
+            return applyRentLocked(vehicle, customer, date, amount);
+        } finally {
+            replicationGate.readLock().unlock();
+        }
+    }
+
+    private long applyRentLocked(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        synchronized (lockFor(vehicle)) {
+            Vehicle.VehicleStatus status = vehicle.getStatus();
+            if (status != Vehicle.VehicleStatus.AVAILABLE && status != Vehicle.VehicleStatus.RESERVED) {
+                return REJECTED;
+            }
+            // Someone else's booking for the date wins whatever the status; a RESERVED vehicle
+            // goes only to the customer holding the booking.
+            Reservation booking = reservations.findOverlapping(vehicle, date, date);
+            if (booking != null ? booking.getCustomer().getCustomerId() != customer.getCustomerId()
+                    : status == Vehicle.VehicleStatus.RESERVED) {
+                return REJECTED;
+            }
+            // Queued first, so a record that cannot be saved changes nothing.
+            RentalRecord record = new RentalRecord(vehicle, customer, date, amount, "RENT");
+            long ticket = queueRecord(record, Vehicle.VehicleStatus.RENTED);
+            if (ticket < 0) {
+                return ticket;
+            }
+            transition(vehicle, Vehicle.VehicleStatus.RENTED);
+            rentalHistory.addRecord(record);
+            return ticket;
+        }
+    }
+
+    // Returns the vehicle if it is rented; same contract as applyRent. A vehicle someone else
+    // has booked for the date goes straight back to RESERVED.
+    private long applyReturn(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        if (writeBlocker() != null) {
+            return REJECTED;
+        }
+        replicationGate.readLock().lock();
+        try {
+            return applyReturnLocked(vehicle, customer, date, extraFees);
+        } finally {
+            replicationGate.readLock().unlock();
+        }
+    }
+
+    private long applyReturnLocked(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        synchronized (lockFor(vehicle)) {
+            if (vehicle.getStatus() != Vehicle.VehicleStatus.RENTED) {
+                return REJECTED;
+            }
+            // Decided before anything is queued, so the vehicle never shows AVAILABLE while
+            // someone else's booking covers the date.
+            Reservation booking = reservations.findOverlapping(vehicle, date, date);
+            boolean held = booking != null && booking.getCustomer().getCustomerId() != customer.getCustomerId();
+            Vehicle.VehicleStatus next = held ? Vehicle.VehicleStatus.RESERVED : Vehicle.VehicleStatus.AVAILABLE;
             RentalRecord record = new RentalRecord(vehicle, customer, date, extraFees, "RETURN");
+            long ticket = queueRecord(record, next);
+            if (ticket < 0) {
+                return ticket;
+            }
+            if (held) {
+                // A replayed RETURN makes the vehicle AVAILABLE; the STATUS line after it
+                // holds it for the booking. If that line cannot be queued the journal has
+                // failed, and the caller gets the error instead of the record's ticket.
+                ticket = queueStatus(vehicle, Vehicle.VehicleStatus.RESERVED);
+            }
+            transition(vehicle, next);
             rentalHistory.addRecord(record);
-            saveRecord(record);
-            System.out.println("Vehicle returned by " + customer.getCustomerName());
+            return ticket;
+        }
+    }
+
+    // --- Reservations ---
+    // Advance bookings for a range of days (both inclusive). A vehicle is RESERVED while one of
+    // its bookings covers the current day, and only the booking customer can rent it then.
+    // Bookings are kept in the reservations journal as RESERVE and CANCEL lines; the
+    // RESERVED status changes go to the rental records journal like any other status change.
+
+    // Books the vehicle for the customer; returns the reservation, or null if the dates are
+    // invalid, the vehicle cannot be booked, or it is already booked on one of the days.
+    public Reservation reserveVehicle(Vehicle vehicle, Customer customer, LocalDate startDate, LocalDate endDate) {
+        long start = System.nanoTime();
+        try {
+            LocalDate today = LocalDate.now();
+            if (endDate.isBefore(startDate) || startDate.isBefore(today)) {
+                System.out.println("Invalid reservation dates.");
+                return null;
+            }
+            if (refusesWrites()) {
+                return null;
+            }
+            Reservation reservation;
+            long ticket;
+            long statusTicket = -1;
+            replicationGate.readLock().lock();
+            reservationLock.readLock().lock();
+            try {
+                synchronized (lockFor(vehicle)) {
+                    Vehicle.VehicleStatus status = vehicle.getStatus();
+                    boolean startsToday = startDate.equals(today);
+                    if (status == Vehicle.VehicleStatus.OUTOFSERVICE
+                            || (startsToday && status != Vehicle.VehicleStatus.AVAILABLE)) {
+                        System.out.println("Vehicle is not available for reservation.");
+                        return null;
+                    }
+                    reservation = new Reservation(nextReservationId.getAndIncrement(), vehicle, customer,
+                            startDate, endDate);
+                    if (!reservations.add(reservation)) {
+                        System.out.println("Vehicle is already reserved on some of these dates.");
+                        return null;
+                    }
+                    ticket = queueReservation(formatReservation(reservation));
+                    if (ticket < 0) {
+                        reservations.remove(reservation.getReservationId());
+                        return null;
+                    }
+                    if (startsToday) {
+                        statusTicket = queueStatus(vehicle, Vehicle.VehicleStatus.RESERVED);
+                        if (statusTicket >= 0) {
+                            transition(vehicle, Vehicle.VehicleStatus.RESERVED);
+                        }
+                    }
+                }
+            } finally {
+                reservationLock.readLock().unlock();
+                replicationGate.readLock().unlock();
+            }
+            if (!awaitSaved(reservationJournal, ticket, "reservation", RentalMetrics.Op.SAVE_RESERVATION)) {
+                return null;
+            }
+            awaitSaved(recordJournal, statusTicket, "status change", RentalMetrics.Op.SAVE_RECORD);
+            System.out.println("Vehicle reserved for " + customer.getCustomerName() + " from " + startDate
+                    + " to " + endDate + ".");
+            return reservation;
+        } finally {
+            metrics.record(RentalMetrics.Op.RESERVE_VEHICLE, start);
+        }
+    }
+
+    // Cancels the booking; a vehicle it was holding becomes AVAILABLE again.
+    public boolean cancelReservation(long reservationId) {
+        long start = System.nanoTime();
+        try {
+            if (refusesWrites()) {
+                return false;
+            }
+            Reservation reservation = reservations.find(reservationId);
+            if (reservation == null) {
+                System.out.println("No reservation with ID " + reservationId + ".");
+                return false;
+            }
+            Vehicle vehicle = reservation.getVehicle();
+            LocalDate today = LocalDate.now();
+            long ticket;
+            long statusTicket = -1;
+            replicationGate.readLock().lock();
+            reservationLock.readLock().lock();
+            try {
+                synchronized (lockFor(vehicle)) {
+                    if (reservations.remove(reservationId) == null) {
+                        System.out.println("No reservation with ID " + reservationId + ".");
+                        return false;
+                    }
+                    ticket = queueReservation("CANCEL," + reservationId);
+                    if (ticket < 0) {
+                        reservations.add(reservation);
+                        return false;
+                    }
+                    if (vehicle.getStatus() == Vehicle.VehicleStatus.RESERVED
+                            && reservations.findOverlapping(vehicle, today, today) == null) {
+                        statusTicket = queueStatus(vehicle, Vehicle.VehicleStatus.AVAILABLE);
+                        if (statusTicket >= 0) {
+                            transition(vehicle, Vehicle.VehicleStatus.AVAILABLE);
+                        }
+                    }
+                }
+            } finally {
+                reservationLock.readLock().unlock();
+                replicationGate.readLock().unlock();
+            }
+            if (!awaitSaved(reservationJournal, ticket, "reservation", RentalMetrics.Op.SAVE_RESERVATION)) {
+                return false;
+            }
+            awaitSaved(recordJournal, statusTicket, "status change", RentalMetrics.Op.SAVE_RECORD);
             return true;
-        } else {
-            System.out.println("Vehicle is not rented.");
+        } finally {
+            metrics.record(RentalMetrics.Op.CANCEL_RESERVATION, start);
+        }
+    }
+
+    // Vehicles with no booking on any day from startDate to endDate, sorted by plate.
+    // Out-of-service vehicles are never free; for a range starting today the vehicle must also
+    // be AVAILABLE right now. Only the bookings overlapping the range are read (see ReservationBook).
+    public List<Vehicle> findAvailableVehicles(LocalDate startDate, LocalDate endDate) {
+        return findAvailableVehicles(startDate, endDate, null);
+    }
+
+    // As above, limited to one vehicle type when type is not null.
+    public List<Vehicle> findAvailableVehicles(LocalDate startDate, LocalDate endDate, VehicleType type) {
+        long start = System.nanoTime();
+        try {
+            List<Vehicle> candidates = new ArrayList<>();
+            for (Vehicle.VehicleStatus status : Vehicle.VehicleStatus.values()) {
+                if (status == Vehicle.VehicleStatus.AVAILABLE
+                        || (startDate.isAfter(LocalDate.now()) && status != Vehicle.VehicleStatus.OUTOFSERVICE)) {
+                    candidates.addAll((type == null) ? fleet.vehicles(status) : fleet.vehicles(status, type));
+                }
+            }
+            IntSet booked = reservations.bookedPlates(startDate, endDate);
+            List<Vehicle> free = new ArrayList<>(candidates.size());
+            for (Vehicle vehicle : candidates) {
+                if (!booked.contains(vehicle.getPlateCode())) {
+                    free.add(vehicle);
+                }
+            }
+            free.sort(Comparator.comparing(Vehicle::getLicensePlate));
+            return free;
+        } finally {
+            metrics.record(RentalMetrics.Op.FIND_AVAILABLE_VEHICLES, start);
+        }
+    }
+
+    // The vehicle's bookings in date order.
+    public List<Reservation> getReservations(Vehicle vehicle) {
+        return reservations.forVehicle(vehicle);
+    }
+
+    public Reservation findReservation(long reservationId) {
+        return reservations.find(reservationId);
+    }
+
+    // Brings RESERVED statuses in line with the given day: vehicles booked for it become
+    // RESERVED if they are AVAILABLE, and RESERVED vehicles with no booking for it are released.
+    // Runs at startup and before every scheduled snapshot.
+    public void refreshReservations(LocalDate today) {
+        long start = System.nanoTime();
+        try {
+            if (writeBlocker() != null) {
+                return;
+            }
+            long ticket = -1;
+            replicationGate.readLock().lock();
+            try {
+                for (Reservation booking : reservations.overlapping(today, today)) {
+                    Vehicle vehicle = booking.getVehicle();
+                    synchronized (lockFor(vehicle)) {
+                        if (vehicle.getStatus() == Vehicle.VehicleStatus.AVAILABLE
+                                && reservations.findOverlapping(vehicle, today, today) != null) {
+                            ticket = Math.max(ticket, moveQueued(vehicle, Vehicle.VehicleStatus.RESERVED));
+                        }
+                    }
+                }
+                for (Vehicle vehicle : fleet.vehicles(Vehicle.VehicleStatus.RESERVED)) {
+                    synchronized (lockFor(vehicle)) {
+                        if (vehicle.getStatus() == Vehicle.VehicleStatus.RESERVED
+                                && reservations.findOverlapping(vehicle, today, today) == null) {
+                            ticket = Math.max(ticket, moveQueued(vehicle, Vehicle.VehicleStatus.AVAILABLE));
+                        }
+                    }
+                }
+            } finally {
+                replicationGate.readLock().unlock();
+            }
+            awaitSaved(recordJournal, ticket, "status change", RentalMetrics.Op.SAVE_RECORD);
+        } finally {
+            metrics.record(RentalMetrics.Op.REFRESH_RESERVATIONS, start);
+        }
+    }
+
+    // --- Batch operations ---
+    // Each batch validates and applies every item, then persists all of them with a single
+    // journal commit. Outcomes are reported per item instead of printed.
+
+    public BatchResult<Vehicle> addVehicles(Collection<Vehicle> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult<Vehicle> result = new BatchResult<>();
+            long lastTicket = -1;
+            for (Vehicle vehicle : batch) {
+                String blocked = writeBlocker();
+                if (blocked != null) {
+                    result.failed(vehicle, blocked);
+                    continue;
+                }
+                if (vehicle.getLicensePlate() == null) {
+                    result.failed(vehicle, "Vehicle has no license plate.");
+                    continue;
+                }
+                long ticket = registerVehicle(vehicle, vehicleJournal);
+                if (ticket == REJECTED) {
+                    result.failed(vehicle, "Vehicle with plate " + vehicle.getLicensePlate() + " already exists.");
+                } else if (ticket < 0) {
+                    result.failed(vehicle, "Error saving vehicle.");
+                } else {
+                    lastTicket = Math.max(lastTicket, ticket);
+                    result.succeeded(vehicle);
+                }
+            }
+            awaitBatch(vehicleJournal, lastTicket, result, "vehicles", RentalMetrics.Op.SAVE_VEHICLE);
+            return result;
+        } finally {
+            metrics.record(RentalMetrics.Op.ADD_VEHICLES, start);
+        }
+    }
+
+    public BatchResult<Customer> addCustomers(Collection<Customer> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult<Customer> result = new BatchResult<>();
+            long lastTicket = -1;
+            for (Customer customer : batch) {
+                String blocked = writeBlocker();
+                if (blocked != null) {
+                    result.failed(customer, blocked);
+                    continue;
+                }
+                long ticket = registerCustomer(customer, customerJournal);
+                if (ticket == REJECTED) {
+                    result.failed(customer, "Customer with ID " + customer.getCustomerId() + " already exists.");
+                } else if (ticket < 0) {
+                    result.failed(customer, "Error saving customer.");
+                } else {
+                    lastTicket = Math.max(lastTicket, ticket);
+                    result.succeeded(customer);
+                }
+            }
+            awaitBatch(customerJournal, lastTicket, result, "customers", RentalMetrics.Op.SAVE_CUSTOMER);
+            return result;
+        } finally {
+            metrics.record(RentalMetrics.Op.ADD_CUSTOMERS, start);
+        }
+    }
+
+    public BatchResult<RentalOrder> rentVehicles(Collection<RentalOrder> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult<RentalOrder> result = new BatchResult<>();
+            long lastTicket = -1;
+            for (RentalOrder order : batch) {
+                String blocked = writeBlocker();
+                long ticket = (blocked != null) ? REJECTED
+                        : applyRent(order.getVehicle(), order.getCustomer(), order.getDate(), order.getAmount());
+                if (blocked != null) {
+                    result.failed(order, blocked);
+                } else if (ticket == REJECTED) {
+                    result.failed(order, "Vehicle is not available for renting.");
+                } else if (ticket < 0) {
+                    // The record could not be queued, so nothing was applied.
+                    result.failed(order, "Error saving rental record.");
+                } else {
+                    lastTicket = Math.max(lastTicket, ticket);
+                    result.succeeded(order);
+                }
+            }
+            awaitBatch(recordJournal, lastTicket, result, "rental records", RentalMetrics.Op.SAVE_RECORD);
+            return result;
+        } finally {
+            metrics.record(RentalMetrics.Op.RENT_VEHICLES, start);
+        }
+    }
+
+    public BatchResult<RentalOrder> returnVehicles(Collection<RentalOrder> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult<RentalOrder> result = new BatchResult<>();
+            long lastTicket = -1;
+            for (RentalOrder order : batch) {
+                String blocked = writeBlocker();
+                long ticket = (blocked != null) ? REJECTED
+                        : applyReturn(order.getVehicle(), order.getCustomer(), order.getDate(), order.getAmount());
+                if (blocked != null) {
+                    result.failed(order, blocked);
+                } else if (ticket == REJECTED) {
+                    result.failed(order, "Vehicle is not rented.");
+                } else if (ticket < 0) {
+                    // The record could not be queued, so nothing was applied.
+                    result.failed(order, "Error saving rental record.");
+                } else {
+                    lastTicket = Math.max(lastTicket, ticket);
+                    result.succeeded(order);
+                }
+            }
+            awaitBatch(recordJournal, lastTicket, result, "rental records", RentalMetrics.Op.SAVE_RECORD);
+            return result;
+        } finally {
+            metrics.record(RentalMetrics.Op.RETURN_VEHICLES, start);
+        }
+    }
+
+    // Lines were queued one by one as the items were applied; waiting for the last ticket
+    // commits them all in one write.
+    private void awaitBatch(Journal journal, long lastTicket, BatchResult<?> result, String what,
+            RentalMetrics.Op op) {
+        long start = System.nanoTime();
+        try {
+            if (lastTicket < 0) {
+                return;
+            }
+            try {
+                journal.awaitCommit(lastTicket);
+            } catch (IOException e) {
+                result.persistFailed("Error saving " + what + ": " + e.getMessage());
+            }
+        } finally {
+            metrics.record(op, start);
+        }
+    }
+
+    // Moves a vehicle between AVAILABLE, RESERVED, MAINTENANCE and OUTOFSERVICE.
+    // Renting and returning must go through rentVehicle/returnVehicle so a record is kept.
+    public boolean changeStatus(Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        long start = System.nanoTime();
+        try {
+            if (newStatus == Vehicle.VehicleStatus.RENTED) {
+                System.out.println("Use rentVehicle to rent a vehicle.");
+                return false;
+            }
+            if (refusesWrites()) {
+                return false;
+            }
+            long ticket;
+            replicationGate.readLock().lock();
+            try {
+                synchronized (lockFor(vehicle)) {
+                    Vehicle.VehicleStatus current = vehicle.getStatus();
+                    if (current == Vehicle.VehicleStatus.RENTED || !current.canTransitionTo(newStatus)) {
+                        System.out.println("Vehicle cannot move from " + current + " to " + newStatus + ".");
+                        return false;
+                    }
+                    ticket = moveQueued(vehicle, newStatus);
+                }
+            } finally {
+                replicationGate.readLock().unlock();
+            }
+            return ticket >= 0 && awaitSaved(recordJournal, ticket, "status change", RentalMetrics.Op.SAVE_RECORD);
+        } finally {
+            metrics.record(RentalMetrics.Op.CHANGE_STATUS, start);
+        }
+    }
+
+    // Backs Rentable.rentVehicle() and returnVehicle() for a registered vehicle. Renting and
+    // returning need a customer, a booking check and a record, so moves into or out of
+    // RENTED are refused here; the rest (e.g. MAINTENANCE back to AVAILABLE) are changeStatus.
+    boolean changeRentableStatus(Vehicle vehicle, Vehicle.VehicleStatus newStatus) {
+        if (newStatus == Vehicle.VehicleStatus.RENTED || vehicle.getStatus() == Vehicle.VehicleStatus.RENTED) {
+            System.out.println("Use RentalSystem.rentVehicle/returnVehicle for a registered vehicle.");
             return false;
         }
+        return changeStatus(vehicle, newStatus);
     }
 
+    // Available vehicles come from the fleet index, sorted by plate.
     public void displayVehicles(boolean onlyAvailable) {
-        System.out.println("|     Type         |\tPlate\t|\tMake\t|\tModel\t|\tYear\t|");
-        System.out.println("---------------------------------------------------------------------------------");
-        for (Vehicle v : vehicles) {
-            if (!onlyAvailable || v.getStatus() == Vehicle.VehicleStatus.AVAILABLE) {
+        long start = System.nanoTime();
+        try {
+            System.out.println("|     Type         |\tPlate\t|\tMake\t|\tModel\t|\tYear\t|");
+            System.out.println("---------------------------------------------------------------------------------");
+            List<Vehicle> shown;
+            if (onlyAvailable) {
+                shown = fleet.vehicles(Vehicle.VehicleStatus.AVAILABLE);
+                shown.sort(Comparator.comparing(Vehicle::getLicensePlate));
+            } else {
+                shown = getVehicles();
+            }
+            for (Vehicle v : shown) {
                 String type = (v instanceof Car) ? "Car" : (v instanceof Motorcycle) ? "Motorcycle" :
                               (v instanceof Truck) ? "Truck" : "Vehicle";
                 System.out.println("|     " + type + "\t|\t" + v.getLicensePlate() + "\t|\t"
                         + v.getMake() + "\t|\t" + v.getModel() + "\t|\t" + v.getYear() + "\t|");
             }
+            System.out.println();
+        } finally {
+            metrics.record(RentalMetrics.Op.DISPLAY_VEHICLES, start);
+        }
+    }
+
+    // Constant-time fleet counters, e.g. countVehicles(AVAILABLE, VehicleType.TRUCK).
+    public int countVehicles(Vehicle.VehicleStatus status) {
+        long start = System.nanoTime();
+        try {
+            return fleet.count(status);
+        } finally {
+            metrics.record(RentalMetrics.Op.COUNT_VEHICLES, start);
+        }
+    }
+
+    public int countVehicles(Vehicle.VehicleStatus status, VehicleType type) {
+        long start = System.nanoTime();
+        try {
+            return fleet.count(status, type);
+        } finally {
+            metrics.record(RentalMetrics.Op.COUNT_VEHICLES, start);
+        }
+    }
+
+    // Registered vehicles currently in the given status, in no particular order.
+    public List<Vehicle> findVehiclesByStatus(Vehicle.VehicleStatus status) {
+        long start = System.nanoTime();
+        try {
+            return fleet.vehicles(status);
+        } finally {
+            metrics.record(RentalMetrics.Op.FIND_VEHICLES_BY_STATUS, start);
+        }
+    }
+
+    public List<Vehicle> findVehiclesByStatus(Vehicle.VehicleStatus status, VehicleType type) {
+        long start = System.nanoTime();
+        try {
+            return fleet.vehicles(status, type);
+        } finally {
+            metrics.record(RentalMetrics.Op.FIND_VEHICLES_BY_STATUS, start);
         }
-        System.out.println();
     }
     
     public void displayAllCustomers() {
-        for (Customer c : customers) {
-            System.out.println("  " + c.toString());
+        long start = System.nanoTime();
+        try {
+            synchronized (customers) {
+                for (Customer c : customers) {
+                    System.out.println("  " + c.toString());
+                }
+            }
+        } finally {
+            metrics.record(RentalMetrics.Op.DISPLAY_ALL_CUSTOMERS, start);
         }
     }
     
+    public RentalMetrics getMetrics() {
+        return metrics;
+    }
+
+    public RentalHistory getRentalHistory() {
+        return rentalHistory;
+    }
+
+    // Utilization, rental durations and idle times for the fleet, computed on all cores;
+    // utilization covers the days from..to inclusive. See RentalAnalytics.
+    public RentalAnalytics.Report analyzeFleet(LocalDate from, LocalDate to) {
+        long start = System.nanoTime();
+        try {
+            return analytics.analyze(rentalHistory, getVehicles(), from, to);
+        } finally {
+            metrics.record(RentalMetrics.Op.ANALYZE_FLEET, start);
+        }
+    }
+
     public void displayRentalHistory() {
-        for (RentalRecord record : rentalHistory.getRentalHistory()) {
-            System.out.println(record.toString());
+        long start = System.nanoTime();
+        try {
+            rentalHistory.forEach((vehicle, customer, day, cents, type) -> System.out.println(
+                    RentalRecord.format(type, vehicle, customer,
+                            (day == RentalHistory.NO_DATE) ? null : LocalDate.ofEpochDay(day), cents / 100.0)));
+        } finally {
+            metrics.record(RentalMetrics.Op.DISPLAY_RENTAL_HISTORY, start);
         }
     }
     
     public Vehicle findVehicleByPlate(String plate) {
-        for (Vehicle v : vehicles) {
-            if (v.getLicensePlate().equalsIgnoreCase(plate)) {
-                return v;
-            }
+        long start = System.nanoTime();
+        try {
+            return vehicleByPlateCode(PlateCodec.encode(plate));
+        } finally {
+            metrics.record(RentalMetrics.Op.FIND_VEHICLE_BY_PLATE, start);
         }
-        return null;
     }
     
+    // The registered vehicle with this PlateCodec code, or null (also for PlateCodec.INVALID).
+    Vehicle vehicleByPlateCode(int code) {
+        if (code == PlateCodec.INVALID) {
+            return null;
+        }
+        vehicleLock.readLock().lock();
+        try {
+            return vehiclesByPlate.get(code);
+        } finally {
+            vehicleLock.readLock().unlock();
+        }
+    }
+
     public Customer findCustomerById(String id) {
-        for (Customer c : customers) {
-            if (c.getCustomerId() == Integer.parseInt(id))
-                return c;
+        return findCustomerById(Integer.parseInt(id));
+    }
+
+    public Customer findCustomerById(int id) {
+        long start = System.nanoTime();
+        try {
+            customerLock.readLock().lock();
+            try {
+                return customersById.get(id);
+            } finally {
+                customerLock.readLock().unlock();
+            }
+        } finally {
+            metrics.record(RentalMetrics.Op.FIND_CUSTOMER_BY_ID, start);
+        }
+    }
+
+    // Case-insensitive partial-name search; see CustomerNameIndex for the ranking.
+    public List<Customer> searchCustomersByName(String query, int limit) {
+        long start = System.nanoTime();
+        try {
+            return customerNames.search(query, limit);
+        } finally {
+            metrics.record(RentalMetrics.Op.SEARCH_CUSTOMERS_BY_NAME, start);
+        }
+    }
+
+    // --- Single-writer mode (see CommandPipeline) ---
+
+    // Applies a pipelined command and queues its journal line without waiting; returns the
+    // ticket to pass to awaitCommand, REJECTED if the command was refused, or -1 if the line
+    // could not be queued.
+    long applyCommand(CommandPipeline.Type type, Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        if (writeBlocker() != null) {
+            return REJECTED;
+        }
+        switch (type) {
+            case ADD_VEHICLE:
+                if (vehicle.getLicensePlate() == null) {
+                    return REJECTED;
+                }
+                return registerVehicle(vehicle, vehicleJournal);
+            case ADD_CUSTOMER:
+                return registerCustomer(customer, customerJournal);
+            case RENT:
+                return applyRent(vehicle, customer, date, amount);
+            case RETURN:
+                return applyReturn(vehicle, customer, date, amount);
+            default:
+                throw new IllegalArgumentException("Unknown command " + type);
+        }
+    }
+
+    // Blocks until the command's journal line is committed (one write covers every line
+    // queued before it); throws if that write failed.
+    void awaitCommand(CommandPipeline.Type type, long ticket) throws IOException {
+        Journal journal = (type == CommandPipeline.Type.ADD_VEHICLE) ? vehicleJournal
+                : (type == CommandPipeline.Type.ADD_CUSTOMER) ? customerJournal : recordJournal;
+        journal.awaitCommit(ticket);
+    }
+
+    // --- Change events ---
+
+    // Delivers every vehicle addition, rent, return and status change from now on to the
+    // listener, in batches on a thread of its own (see RentalEventRing). Close the returned
+    // subscription to stop; a listener that falls too far behind is told what it missed.
+    public RentalEventRing.Subscription subscribe(RentalEventListener listener) {
+        return events.subscribe(listener, EVENT_BATCH_SIZE);
+    }
+
+    // Commits anything still queued in the journals and closes them.
+    public void shutdown() {
+        events.close();
+        PersistenceWriter writer;
+        synchronized (this) {
+            if (snapshotScheduler != null) {
+                snapshotScheduler.shutdownNow();
+            }
+            writer = recordWriter;
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        for (Journal journal : new Journal[] { vehicleJournal, customerJournal, recordJournal, reservationJournal }) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Error closing " + journal.getPath().getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // --- Replication ---
+    // A primary logs every vehicle, customer, rent, return and status change in a
+    // ReplicationLog; ReplicaFollowers tail it into read-only RentalSystems of their own,
+    // starting from a ReplicationSnapshot. Reservations stay on the primary: followers see
+    // only the RESERVED status changes they cause.
+
+    // Starts logging changes for followers, keeping the last logCapacity of them; returns the
+    // source followers read from. Later calls return a source on the same log.
+    public ReplicationSource startReplication(int logCapacity) {
+        replicationGate.writeLock().lock();
+        try {
+            if (replicationLog == null) {
+                replicationLog = new ReplicationLog(logCapacity);
+            }
+        } finally {
+            replicationGate.writeLock().unlock();
+        }
+        ReplicationLog log = replicationLog;
+        return new ReplicationSource() {
+            @Override
+            public List<ReplicationLog.Entry> read(long afterSeq, int max) {
+                return log.read(afterSeq, max);
+            }
+
+            @Override
+            public ReplicationSnapshot snapshot() {
+                return replicationSnapshot();
+            }
+
+            @Override
+            public long getLastSeq() {
+                return log.getLastSeq();
+            }
+        };
+    }
+
+    // The current state and the log entry it corresponds to. Changes are held off only while
+    // the seq, the vehicles (encoded with their statuses), the customers and the history size
+    // are captured. Records are only ever appended, so the first recordCount of them still
+    // match that seq and are formatted after the lock is released.
+    private ReplicationSnapshot replicationSnapshot() {
+        VehicleCodec.Encoder vehicleData = new VehicleCodec.Encoder();
+        List<Customer> customerList;
+        int recordCount;
+        long seq;
+        // Wait for the background history load first, so size() cannot block under the gate.
+        rentalHistory.awaitLoaded();
+        replicationGate.writeLock().lock();
+        try {
+            seq = replicationLog.getLastSeq();
+            for (Vehicle v : getVehicles()) {
+                vehicleData.encode(v);
+            }
+            customerList = getCustomers();
+            recordCount = rentalHistory.size();
+        } finally {
+            replicationGate.writeLock().unlock();
+        }
+        List<String> customerLines = new ArrayList<>(customerList.size());
+        for (Customer c : customerList) {
+            customerLines.add(formatCustomer(c));
+        }
+        List<String> recordLines = new ArrayList<>(recordCount);
+        rentalHistory.forEach(0, recordCount, (vehicle, customer, day, cents, type) ->
+                recordLines.add(formatRecord(type, vehicle, customer,
+                        (day == RentalHistory.NO_DATE) ? null : LocalDate.ofEpochDay(day), cents / 100.0)));
+        return new ReplicationSnapshot(seq, vehicleData.toByteArray(), customerLines, recordLines);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    // Makes this system a follower: the public operations that change state refuse to.
+    void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    private boolean refusesWrites() {
+        String blocked = writeBlocker();
+        if (blocked != null) {
+            System.out.println(blocked);
+        }
+        return blocked != null;
+    }
+
+    // Why changes are refused right now, or null if they are accepted: on a read-only
+    // replica, and for good once a journal has failed (memory could no longer be saved).
+    String writeBlocker() {
+        if (readOnly) {
+            return READ_ONLY;
+        }
+        if (recordJournal.isFailed() || vehicleJournal.isFailed() || customerJournal.isFailed()
+                || reservationJournal.isFailed()) {
+            return JOURNAL_FAILED;
         }
         return null;
     }
 
-    // --- File-based storage methods (example implementations) ---
-    private void saveVehicle(Vehicle vehicle) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("vehicles.txt", true)))) {
-            // Format: licensePlate,make,model,year,status
-            out.println(vehicle.getLicensePlate() + "," + vehicle.getMake() + "," +
-                        vehicle.getModel() + "," + vehicle.getYear() + "," + vehicle.getStatus());
+    // Replaces everything this follower holds, in memory and on disk, with a primary's
+    // snapshot. Its files then hold exactly the primary's state, so a restarted follower
+    // (which does not know how far it had got) simply installs a fresh snapshot over them.
+    // Queries running meanwhile may see the replica partly installed.
+    void installReplicationSnapshot(ReplicationSnapshot snapshot) {
+        clearForReplication();
+        VehicleCodec.Decoder decoder = new VehicleCodec.Decoder(ByteBuffer.wrap(snapshot.getVehicles()));
+        List<String> vehicleLines = new ArrayList<>();
+        while (decoder.hasNext()) {
+            Vehicle vehicle = decoder.next();
+            if (registerVehicle(vehicle)) {
+                vehicleLines.add(formatVehicle(vehicle));
+            }
+        }
+        for (String line : snapshot.getCustomers()) {
+            Customer customer = parseLine(line, RentalDataLoader::parseCustomer);
+            if (customer != null) {
+                registerCustomer(customer);
+            }
+        }
+        RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> parser = replicatedRecordParser();
+        List<RentalRecord> records = new ArrayList<>(snapshot.getRecords().size());
+        for (String line : snapshot.getRecords()) {
+            RentalDataLoader.RecordEntry entry = parseLine(line, parser);
+            if (entry != null && entry.record != null) {
+                records.add(entry.record);
+            }
+        }
+        rentalHistory.addRecords(records);
+        try {
+            vehicleJournal.appendAll(vehicleLines);
+            customerJournal.appendAll(snapshot.getCustomers());
+            recordJournal.appendAll(snapshot.getRecords());
+        } catch (IOException e) {
+            System.out.println("Error saving replication snapshot: " + e.getMessage());
+        }
+    }
+
+    // Forgets all vehicles, customers and records, and deletes the data files holding them.
+    private synchronized void clearForReplication() {
+        vehicleLock.writeLock().lock();
+        try {
+            for (Vehicle vehicle : vehicles) {
+                vehicle.unregisterFrom(this);
+            }
+            vehicles.clear();
+            vehiclesByPlate.clear();
+            fleet.clear();
+        } finally {
+            vehicleLock.writeLock().unlock();
+        }
+        customerLock.writeLock().lock();
+        try {
+            customers.clear();
+            customersById.clear();
+            customerNames.clear();
+        } finally {
+            customerLock.writeLock().unlock();
+        }
+        rentalHistory = new RentalHistory();
+        try {
+            for (Journal journal : new Journal[] { vehicleJournal, customerJournal, recordJournal }) {
+                Path old = dataDir.resolve(journal.getPath().getFileName() + ".old");
+                journal.rotate(old);
+                Files.delete(old);
+            }
+            for (String file : new String[] { VEHICLES_FILE, CUSTOMERS_FILE, RECORDS_FILE }) {
+                for (long seq : listSegments(file)) {
+                    Files.deleteIfExists(segmentPath(file, seq));
+                }
+            }
+            Files.deleteIfExists(dataDir.resolve(SNAPSHOT_FILE));
+            Files.deleteIfExists(dataDir.resolve(LEGACY_SNAPSHOT_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error clearing replica data", e);
+        }
+        snapshotSegment = 0;
+        lastSegment = 0;
+    }
+
+    // Applies a batch of the primary's log entries, in log order, as loading the same journal
+    // lines at startup would, then writes the lines to this system's own journals in one
+    // commit per journal.
+    void applyReplicated(List<ReplicationLog.Entry> entries) {
+        long vehicleTicket = -1;
+        long customerTicket = -1;
+        long recordTicket = -1;
+        RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> parser = replicatedRecordParser();
+        for (ReplicationLog.Entry entry : entries) {
+            String line = entry.getLine();
+            switch (entry.getKind()) {
+                case ReplicationLog.VEHICLE: {
+                    Vehicle vehicle = parseLine(line, RentalDataLoader::parseVehicle);
+                    if (vehicle != null && registerVehicle(vehicle)) {
+                        vehicleTicket = Math.max(vehicleTicket, queueLine(vehicleJournal, line));
+                    }
+                    break;
+                }
+                case ReplicationLog.CUSTOMER: {
+                    Customer customer = parseLine(line, RentalDataLoader::parseCustomer);
+                    if (customer != null && registerCustomer(customer)) {
+                        customerTicket = Math.max(customerTicket, queueLine(customerJournal, line));
+                    }
+                    break;
+                }
+                case ReplicationLog.RECORD: {
+                    RentalDataLoader.RecordEntry record = parseLine(line, parser);
+                    if (record == null) {
+                        break;
+                    }
+                    synchronized (lockFor(record.vehicle)) {
+                        transition(record.vehicle, record.status);
+                        publish(line.startsWith("STATUS,") ? RentalEvent.Type.STATUS_CHANGED
+                                : (record.status == Vehicle.VehicleStatus.RENTED) ? RentalEvent.Type.RENTED
+                                : RentalEvent.Type.RETURNED, record.vehicle, record.status, record.record);
+                        if (record.record != null) {
+                            rentalHistory.addRecord(record.record);
+                        }
+                        recordTicket = Math.max(recordTicket, queueLine(recordJournal, line));
+                    }
+                    break;
+                }
+                default:
+                    System.out.println("Skipping unknown replication entry " + entry.getSeq() + ".");
+            }
+        }
+        awaitSaved(vehicleJournal, vehicleTicket, "vehicles", RentalMetrics.Op.SAVE_VEHICLE);
+        awaitSaved(customerJournal, customerTicket, "customers", RentalMetrics.Op.SAVE_CUSTOMER);
+        awaitSaved(recordJournal, recordTicket, "rental records", RentalMetrics.Op.SAVE_RECORD);
+    }
+
+    private RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> replicatedRecordParser() {
+        return RentalDataLoader.recordParser(this::vehicleByPlateCode, this::findCustomerById, name -> null,
+                new AtomicLong());
+    }
+
+    private static <T> T parseLine(String line, RentalDataLoader.LineParser<T> parser) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    // Queues a line without waiting; returns the ticket, or -1 on error.
+    private long queueLine(Journal journal, String line) {
+        try {
+            return journal.enqueue(line);
         } catch (IOException e) {
-            System.out.println("Error saving vehicle: " + e.getMessage());
+            System.out.println("Error saving to " + journal.getPath().getFileName() + ": " + e.getMessage());
+            return -1;
         }
     }
 
-    private void saveCustomer(Customer customer) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("customers.txt", true)))) {
-            // Format: customerId,name
-            out.println(customer.getCustomerId() + "," + customer.getCustomerName());
+    // --- File-based storage methods ---
+    // Each data file is an append-only journal that stays open; concurrent saves are
+    // grouped into a single write (and fsync, depending on DURABILITY).
+    private void openJournals() {
+        try {
+            vehicleJournal = new Journal(dataDir.resolve(VEHICLES_FILE), durability, SYNC_MILLIS,
+                    metrics.get(RentalMetrics.Op.VEHICLES_COMMIT));
+            customerJournal = new Journal(dataDir.resolve(CUSTOMERS_FILE), durability, SYNC_MILLIS,
+                    metrics.get(RentalMetrics.Op.CUSTOMERS_COMMIT));
+            recordJournal = new Journal(dataDir.resolve(RECORDS_FILE), durability, SYNC_MILLIS,
+                    metrics.get(RentalMetrics.Op.RECORDS_COMMIT));
+            reservationJournal = new Journal(dataDir.resolve(RESERVATIONS_FILE), durability, SYNC_MILLIS,
+                    metrics.get(RentalMetrics.Op.RESERVATIONS_COMMIT));
         } catch (IOException e) {
-            System.out.println("Error saving customer: " + e.getMessage());
+            throw new UncheckedIOException("Error opening data files", e);
+        }
+    }
+
+    // Costs one volatile read while nobody is subscribed.
+    private void publish(RentalEvent.Type type, Vehicle vehicle, Vehicle.VehicleStatus status, RentalRecord record) {
+        if (events.hasSubscribers()) {
+            events.publish(type, vehicle, status, (record == null) ? null : record.getCustomer(),
+                    (record == null) ? null : record.getRecordDate(), (record == null) ? 0 : record.getTotalAmount());
         }
     }
 
-    private void saveRecord(RentalRecord record) {
-        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("rental_records.txt", true)))) {
-            // Save record using toString() for simplicity (adjust as needed).
-            out.println(record.toString());
+    // Logs the change for followers if this system is a replication primary.
+    private void replicate(char kind, String line) {
+        ReplicationLog log = replicationLog;
+        if (log != null) {
+            log.append(kind, line);
+        }
+    }
+
+    // Queues the record while the vehicle's stripe is held, so the journal keeps each
+    // vehicle's records in transition order; returns the ticket to wait on, or -1 on error.
+    // Followers and subscribers hear of it only once it is queued; status is the one the
+    // vehicle moves to.
+    private long queueRecord(RentalRecord record, Vehicle.VehicleStatus status) {
+        String line = formatRecord(record);
+        long ticket;
+        try {
+            ticket = recordJournal.enqueue(line);
         } catch (IOException e) {
             System.out.println("Error saving rental record: " + e.getMessage());
+            return -1;
+        }
+        replicate(ReplicationLog.RECORD, line);
+        publish("RENT".equals(record.getRecordType()) ? RentalEvent.Type.RENTED : RentalEvent.Type.RETURNED,
+                record.getVehicle(), status, record);
+        return ticket;
+    }
+
+    // Queues a status change in the rental records journal, next to the rents and returns,
+    // so replaying it restores the status in order; returns the ticket to wait on, or -1 on error.
+    private long queueStatus(Vehicle vehicle, Vehicle.VehicleStatus status) {
+        // Format: STATUS,licensePlate,status
+        String line = "STATUS," + vehicle.getLicensePlate() + "," + status;
+        long ticket;
+        try {
+            ticket = recordJournal.enqueue(line);
+        } catch (IOException e) {
+            System.out.println("Error saving status change: " + e.getMessage());
+            return -1;
         }
+        replicate(ReplicationLog.RECORD, line);
+        publish(RentalEvent.Type.STATUS_CHANGED, vehicle, status, null);
+        return ticket;
+    }
+
+    // Queues the status change and, once it is queued, makes it; called with the vehicle's
+    // stripe held. Returns the ticket, or -1 (and leaves the status alone) on error.
+    private long moveQueued(Vehicle vehicle, Vehicle.VehicleStatus status) {
+        long ticket = queueStatus(vehicle, status);
+        if (ticket >= 0) {
+            transition(vehicle, status);
+        }
+        return ticket;
+    }
+
+    // Queues a RESERVE or CANCEL line while the vehicle's stripe is held; returns the ticket
+    // to wait on, or -1 on error.
+    private long queueReservation(String line) {
+        try {
+            return reservationJournal.enqueue(line);
+        } catch (IOException e) {
+            System.out.println("Error saving reservation: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Waits for a queued line to be committed, outside of any vehicle lock.
+    // Returns false if the write failed; a negative ticket (nothing queued) counts as saved.
+    private boolean awaitSaved(Journal journal, long ticket, String what, RentalMetrics.Op op) {
+        if (ticket < 0) {
+            return true;
+        }
+        long start = System.nanoTime();
+        try {
+            journal.awaitCommit(ticket);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving " + what + ": " + e.getMessage());
+            return false;
+        } finally {
+            metrics.record(op, start);
+        }
+    }
+
+    // --- Snapshots and compaction ---
+    // A snapshot holds every vehicle (with its current status) and customer. Taking one rotates
+    // the journals into numbered segments (e.g. vehicles.3.txt); the vehicle and customer segments
+    // it covers are deleted, and covered rental record segments are kept only as history.
+    // Startup reads the snapshot and then replays just the segments and journals written after it.
+
+    // Rewrites the reservations journal with just the bookings that have not ended yet.
+    // Holds off reserving and cancelling meanwhile. If the process stops halfway, startup
+    // reads the old file before the new one and ignores the repeated bookings.
+    private void compactReservations() throws IOException {
+        reservationLock.writeLock().lock();
+        try {
+            reservations.removeEndedBefore(LocalDate.now());
+            Path old = dataDir.resolve(RESERVATIONS_FILE + ".old");
+            reservationJournal.rotate(old);
+            List<String> lines = new ArrayList<>();
+            // Keeps ids of dropped and cancelled bookings from being handed out again.
+            lines.add("NEXT," + nextReservationId.get());
+            for (Reservation reservation : reservations.all()) {
+                lines.add(formatReservation(reservation));
+            }
+            reservationJournal.appendAll(lines);
+            Files.delete(old);
+        } finally {
+            reservationLock.writeLock().unlock();
+        }
+    }
+
+    // Writes a snapshot of the current fleet and compacts the logs it covers.
+    public synchronized void snapshot() throws IOException {
+        long start = System.nanoTime();
+        try {
+            long seq = lastSegment + 1;
+            // Changes queue their journal line before they are applied, so the rotation and the
+            // capture hold off all changes: otherwise a line could land in a rotated segment
+            // while the state captured still lacked it, and startup would skip it.
+            VehicleCodec.Encoder vehicleData = new VehicleCodec.Encoder();
+            List<Vehicle> vehicleList;
+            List<Customer> customerList;
+            replicationGate.writeLock().lock();
+            try {
+                vehicleJournal.rotate(segmentPath(VEHICLES_FILE, seq));
+                customerJournal.rotate(segmentPath(CUSTOMERS_FILE, seq));
+                recordJournal.rotate(segmentPath(RECORDS_FILE, seq));
+                lastSegment = seq;
+                vehicleList = getVehicles();
+                for (Vehicle v : vehicleList) {
+                    vehicleData.encode(v);
+                }
+                customerList = getCustomers();
+            } finally {
+                replicationGate.writeLock().unlock();
+            }
+
+            Path tmp = dataDir.resolve(SNAPSHOT_FILE + ".tmp");
+            writeSnapshot(tmp, seq, vehicleList.size(), vehicleData, customerList);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, dataDir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(dataDir.resolve(LEGACY_SNAPSHOT_FILE));
+            snapshotSegment = seq;
+
+            for (long covered : listSegments(VEHICLES_FILE)) {
+                if (covered <= seq) {
+                    Files.deleteIfExists(segmentPath(VEHICLES_FILE, covered));
+                }
+            }
+            for (long covered : listSegments(CUSTOMERS_FILE)) {
+                if (covered <= seq) {
+                    Files.deleteIfExists(segmentPath(CUSTOMERS_FILE, covered));
+                }
+            }
+            compactReservations();
+        } finally {
+            metrics.record(RentalMetrics.Op.SNAPSHOT, start);
+        }
+    }
+
+    // Layout: magic, version (ints), last segment covered (long), vehicle count and encoded size
+    // (ints) followed by the VehicleCodec stream, then the customer count and, per customer,
+    // id, name length (ints) and the UTF-8 name.
+    private void writeSnapshot(Path file, long seq, int vehicleCount, VehicleCodec.Encoder vehicleData,
+            List<Customer> customerList) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file.toFile()), 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(seq);
+            out.writeInt(vehicleCount);
+            out.writeInt(vehicleData.size());
+            vehicleData.writeTo(out);
+            out.writeInt(customerList.size());
+            for (Customer c : customerList) {
+                byte[] name = c.getCustomerName().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(c.getCustomerId());
+                out.writeInt(name.length);
+                out.write(name);
+            }
+        }
+    }
+
+    // Takes a snapshot every period until shutdown.
+    public synchronized void scheduleSnapshots(long period, TimeUnit unit) {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rental-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            // Anything thrown out of the task would cancel every later run.
+            try {
+                refreshReservations(LocalDate.now());
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Error writing snapshot: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    // Copies of the fleet and customer lists, safe to iterate while others add to them.
+    private List<Vehicle> getVehicles() {
+        synchronized (vehicles) {
+            return new ArrayList<>(vehicles);
+        }
+    }
+
+    private List<Customer> getCustomers() {
+        synchronized (customers) {
+            return new ArrayList<>(customers);
+        }
+    }
+
+    // Path of a rotated segment: vehicles.txt with seq 3 becomes vehicles.3.txt.
+    private Path segmentPath(String file, long seq) {
+        int dot = file.lastIndexOf('.');
+        return dataDir.resolve(file.substring(0, dot) + "." + seq + file.substring(dot));
+    }
+
+    // Sequence numbers of the rotated segments of a journal file, in ascending order.
+    private List<Long> listSegments(String file) {
+        int dot = file.lastIndexOf('.');
+        String prefix = file.substring(0, dot) + ".";
+        String suffix = file.substring(dot);
+        List<Long> segments = new ArrayList<>();
+        File[] files = dataDir.toAbsolutePath().toFile().listFiles();
+        if (files == null) {
+            return segments;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(prefix) && name.endsWith(suffix)
+                    && name.length() > prefix.length() + suffix.length()) {
+                try {
+                    segments.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment (e.g. a temp file); ignore it.
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
     }
 
     // --- Data Loading method ---
+    // Reads the snapshot, then the vehicle and customer segments and journals written after it,
+    // and replays the rental records written after it into vehicle statuses and the history.
+    // So startup reads only what the snapshot does not cover. The rental record segments it
+    // covers are history only: loadCoveredRecords reads them in the background, and history
+    // queries wait until it has. Files are memory-mapped and parsed in parallel by
+    // RentalDataLoader.
     private void loadData() {
-        // The loadData method should read the stored files and repopulate vehicles, customers,
-        // and the rentalHistory. For simplicity, here is a basic implementation for vehicles and customers.
-        
-        // Load vehicles
-        try (BufferedReader br = new BufferedReader(new FileReader("vehicles.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Expected format: licensePlate,make,model,year,status
-                String[] parts = line.split(",");
-                if (parts.length >= 5) {
-                    String lp = parts[0];
-                    String make = parts[1];
-                    String model = parts[2];
-                    int year = Integer.parseInt(parts[3]);
-                    Vehicle.VehicleStatus status = Vehicle.VehicleStatus.valueOf(parts[4]);
-                    // For demonstration, create a simple Car (assume 4 seats).  
-                    Car vehicle = new Car(make, model, year, 4);
-                    vehicle.setLicensePlate(lp);
-                    vehicle.setStatus(status);
-                    vehicles.add(vehicle);
+        long start = System.nanoTime();
+        try {
+            if (Files.exists(dataDir.resolve(SNAPSHOT_FILE))) {
+                loadSnapshot(dataDir.resolve(SNAPSHOT_FILE));
+            } else {
+                loadTextSnapshot(dataDir.resolve(LEGACY_SNAPSHOT_FILE));
+            }
+
+            for (long seq : listSegments(VEHICLES_FILE)) {
+                lastSegment = Math.max(lastSegment, seq);
+                if (seq > snapshotSegment) {
+                    loadVehicles(segmentPath(VEHICLES_FILE, seq));
+                }
+            }
+            loadVehicles(dataDir.resolve(VEHICLES_FILE));
+
+            for (long seq : listSegments(CUSTOMERS_FILE)) {
+                lastSegment = Math.max(lastSegment, seq);
+                if (seq > snapshotSegment) {
+                    loadCustomers(segmentPath(CUSTOMERS_FILE, seq));
+                }
+            }
+            loadCustomers(dataDir.resolve(CUSTOMERS_FILE));
+
+            // Older record files name the customer instead of giving the id.
+            Map<String, Customer> customersByName = new HashMap<>();
+            for (Customer c : getCustomers()) {
+                customersByName.putIfAbsent(c.getCustomerName(), c);
+            }
+            AtomicLong skipped = new AtomicLong();
+            RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> parser = RentalDataLoader.recordParser(
+                    this::vehicleByPlateCode, this::findCustomerById, customersByName::get, skipped);
+            List<Path> covered = new ArrayList<>();
+            for (long seq : listSegments(RECORDS_FILE)) {
+                lastSegment = Math.max(lastSegment, seq);
+                if (seq > snapshotSegment) {
+                    loadRecords(segmentPath(RECORDS_FILE, seq), parser);
+                } else {
+                    covered.add(segmentPath(RECORDS_FILE, seq));
                 }
             }
+            if (!covered.isEmpty()) {
+                // Records loaded from here on are held back until the older ones are in.
+                rentalHistory.deferLoading();
+                loadCoveredRecords(rentalHistory, covered, customersByName);
+            }
+            loadRecords(dataDir.resolve(RECORDS_FILE), parser);
+            loadReservations(dataDir.resolve(RESERVATIONS_FILE + ".old"));
+            loadReservations(dataDir.resolve(RESERVATIONS_FILE));
+            if (skipped.get() > 0) {
+                System.out.println("Left out " + skipped.get() + " rental records with unknown vehicles or customers.");
+            }
+        } finally {
+            metrics.record(RentalMetrics.Op.LOAD_DATA, start);
+        }
+    }
+
+    private void loadSnapshot(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+                System.out.println("Error loading snapshot: unknown format in " + file.getFileName());
+                return;
+            }
+            snapshotSegment = in.getLong();
+            lastSegment = Math.max(lastSegment, snapshotSegment);
+            int vehicleCount = in.getInt();
+            int vehicleBytes = in.getInt();
+            ByteBuffer vehicleData = in.slice();
+            vehicleData.limit(vehicleBytes);
+            VehicleCodec.Decoder decoder = new VehicleCodec.Decoder(vehicleData);
+            for (int i = 0; i < vehicleCount; i++) {
+                registerVehicle(decoder.next());
+            }
+            in.position(in.position() + vehicleBytes);
+            int customerCount = in.getInt();
+            for (int i = 0; i < customerCount; i++) {
+                int id = in.getInt();
+                byte[] name = new byte[in.getInt()];
+                in.get(name);
+                registerCustomer(new Customer(id, new String(name, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+        }
+    }
+
+    private void loadTextSnapshot(Path file) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file.toFile()), StandardCharsets.UTF_8))) {
+            String header = br.readLine();
+            if (header == null) {
+                return;
+            }
+            // Expected header: snapshot,1,<last segment covered>
+            String[] parts = header.split(",");
+            if (parts.length < 3 || !parts[0].equals("snapshot") || !parts[1].equals("1")) {
+                System.out.println("Error loading snapshot: unknown format " + header);
+                return;
+            }
+            snapshotSegment = Long.parseLong(parts[2]);
+            lastSegment = Math.max(lastSegment, snapshotSegment);
         } catch (FileNotFoundException e) {
-            // File may not exist on first run. This is acceptable.
+            // No snapshot has been taken yet.
+            return;
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+            return;
+        }
+        try {
+            // Body lines: V,<vehicle> or C,<customer>
+            List<Object> entries = RentalDataLoader.parseLines(file, (b, start, end) -> {
+                if (end - start > 2 && b.get(start + 1) == ',') {
+                    if (b.get(start) == 'V') {
+                        return RentalDataLoader.parseVehicle(b, start + 2, end);
+                    } else if (b.get(start) == 'C') {
+                        return RentalDataLoader.parseCustomer(b, start + 2, end);
+                    }
+                }
+                return null;
+            });
+            for (Object entry : entries) {
+                if (entry instanceof Vehicle) {
+                    registerVehicle((Vehicle) entry);
+                } else {
+                    registerCustomer((Customer) entry);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+        }
+    }
+
+    // Unreadable lines are left out and counted, so one corrupt line does not stop startup.
+    private void loadVehicles(Path file) {
+        AtomicLong skipped = new AtomicLong();
+        try {
+            for (Vehicle vehicle : RentalDataLoader.parseLines(file,
+                    RentalDataLoader.counting(RentalDataLoader::parseVehicle, skipped))) {
+                registerVehicle(vehicle);
+            }
         } catch (IOException e) {
             System.out.println("Error loading vehicles: " + e.getMessage());
         }
-        
-        // Load customers
-        try (BufferedReader br = new BufferedReader(new FileReader("customers.txt"))) {
+        reportSkipped(file, skipped);
+    }
+
+    private void loadCustomers(Path file) {
+        AtomicLong skipped = new AtomicLong();
+        try {
+            for (Customer customer : RentalDataLoader.parseLines(file,
+                    RentalDataLoader.counting(RentalDataLoader::parseCustomer, skipped))) {
+                registerCustomer(customer);
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading customers: " + e.getMessage());
+        }
+        reportSkipped(file, skipped);
+    }
+
+    private static void reportSkipped(Path file, AtomicLong skipped) {
+        if (skipped.get() > 0) {
+            System.out.println("Skipped " + skipped.get() + " unreadable lines in " + file.getFileName() + ".");
+        }
+    }
+
+    // Replays RESERVE and CANCEL lines in order; NEXT lines carry the next free id. Bookings already loaded (the same id) and
+    // bookings of unknown vehicles or customers are skipped.
+    private void loadReservations(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
             String line;
             while ((line = br.readLine()) != null) {
-                // Expected format: customerId,name
                 String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    int id = Integer.parseInt(parts[0]);
-                    String name = parts[1];
-                    Customer customer = new Customer(id, name);
-                    customers.add(customer);
+                try {
+                    if (parts[0].equals("RESERVE") && parts.length >= 6) {
+                        long id = Long.parseLong(parts[1]);
+                        Vehicle vehicle = findVehicleByPlate(parts[2]);
+                        Customer customer = findCustomerById(Integer.parseInt(parts[3]));
+                        if (vehicle != null && customer != null) {
+                            reservations.add(new Reservation(id, vehicle, customer,
+                                    LocalDate.parse(parts[4]), LocalDate.parse(parts[5])));
+                        }
+                        nextReservationId.set(Math.max(nextReservationId.get(), id + 1));
+                    } else if (parts[0].equals("CANCEL") && parts.length >= 2) {
+                        reservations.remove(Long.parseLong(parts[1]));
+                    } else if (parts[0].equals("NEXT") && parts.length >= 2) {
+                        nextReservationId.set(Math.max(nextReservationId.get(), Long.parseLong(parts[1])));
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("Skipping bad reservation line: " + line);
                 }
             }
-        } catch (FileNotFoundException e) {
-            // Acceptable if file does not exist yet.
         } catch (IOException e) {
-            System.out.println("Error loading customers: " + e.getMessage());
+            System.out.println("Error loading reservations: " + e.getMessage());
         }
-        
-        // Load rental records (optional and simplified)
-        try (BufferedReader br = new BufferedReader(new FileReader("rental_records.txt"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
+    }
+
+    // Adds the file's records to the history and applies their status changes in order.
+    private void loadRecords(Path file, RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> parser) {
+        try {
+            List<RentalDataLoader.RecordEntry> entries = RentalDataLoader.parseLines(file, parser);
+            List<RentalRecord> records = new ArrayList<>(entries.size());
+            for (RentalDataLoader.RecordEntry entry : entries) {
+                if (entry.record != null) {
+                    records.add(entry.record);
+                }
+                transition(entry.vehicle, entry.status);
             }
-        } catch (FileNotFoundException e) {
-            // Acceptable if file does not exist.
+            rentalHistory.addRecords(records);
         } catch (IOException e) {
             System.out.println("Error loading rental records: " + e.getMessage());
         }
     }
+
+    // Reads the rental record segments the snapshot covers into the history on a thread of
+    // its own. Their statuses are already in the snapshot, so only the records are kept.
+    private void loadCoveredRecords(RentalHistory history, List<Path> segments, Map<String, Customer> customersByName) {
+        Thread loader = new Thread(() -> {
+            AtomicLong skipped = new AtomicLong();
+            RentalDataLoader.LineParser<RentalDataLoader.RecordEntry> parser = RentalDataLoader.recordParser(
+                    this::vehicleByPlateCode, this::findCustomerById, customersByName::get, skipped);
+            List<RentalRecord> records = new ArrayList<>();
+            try {
+                for (Path segment : segments) {
+                    for (RentalDataLoader.RecordEntry entry : RentalDataLoader.parseLines(segment, parser)) {
+                        if (entry.record != null) {
+                            records.add(entry.record);
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Error loading rental history: " + e.getMessage());
+            } finally {
+                // Releases the waiting queries even if a segment could not be read.
+                history.finishLoading(records);
+            }
+            if (skipped.get() > 0) {
+                System.out.println("Left out " + skipped.get() + " rental records with unknown vehicles or customers.");
+            }
+        }, "rental-history-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    // Format: licensePlate,make,model,year,status,type,<type fields> (see RentalDataLoader.parseVehicle)
+    static String formatVehicle(Vehicle vehicle) {
+        String line = vehicle.getLicensePlate() + "," + vehicle.getMake() + "," +
+                vehicle.getModel() + "," + vehicle.getYear() + "," + vehicle.getStatus();
+        if (vehicle instanceof SportCar) {
+            SportCar sportCar = (SportCar) vehicle;
+            return line + ",SPORTCAR," + sportCar.getNumSeats() + "," + sportCar.getHorsepower() + "," + sportCar.hasTurbo();
+        } else if (vehicle instanceof Car) {
+            return line + ",CAR," + ((Car) vehicle).getNumSeats();
+        } else if (vehicle instanceof Motorcycle) {
+            return line + ",MOTORCYCLE," + ((Motorcycle) vehicle).hasSidecar();
+        } else if (vehicle instanceof Truck) {
+            return line + ",TRUCK," + ((Truck) vehicle).getCargoCapacity();
+        }
+        return line;
+    }
+
+    // Format: customerId,name
+    private static String formatCustomer(Customer customer) {
+        return customer.getCustomerId() + "," + customer.getCustomerName();
+    }
+
+    // Format: RESERVE,reservationId,licensePlate,customerId,startDate,endDate
+    private static String formatReservation(Reservation reservation) {
+        return "RESERVE," + reservation.getReservationId() + "," + reservation.getVehicle().getLicensePlate() + ","
+                + reservation.getCustomer().getCustomerId() + "," + reservation.getStartDate() + ","
+                + reservation.getEndDate();
+    }
+
+    // Format: recordType,licensePlate,customerId,date,amount
+    private static String formatRecord(RentalRecord record) {
+        return formatRecord(record.getRecordType(), record.getVehicle(), record.getCustomer(),
+                record.getRecordDate(), record.getTotalAmount());
+    }
+
+    private static String formatRecord(String recordType, Vehicle vehicle, Customer customer,
+                                       LocalDate date, double amount) {
+        return recordType + "," + vehicle.getLicensePlate() + "," + customer.getCustomerId() + "," + date + "," + amount;
+    }
 }
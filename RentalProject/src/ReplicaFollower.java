@@ -0,0 +1,163 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Keeps a read-only RentalSystem in step with a primary: installs a snapshot of the primary,
+// then applies its ReplicationLog entries in order, a batch per journal commit. Queries on
+// the replica see the primary's state as of the last applied entry.
+// Whenever the replica has fallen further behind than the primary's log holds, and on the
+// first poll after a restart, its whole state is replaced by a fresh snapshot.
+public class ReplicaFollower implements ReplicaFollowerMBean {
+    // Entries read and applied per round trip to the source.
+    private static final int BATCH_SIZE = 1024;
+
+    private final RentalSystem replica;
+    private final ReplicationSource source;
+
+    // Written only under the monitor, by poll(); read by the MBean getters.
+    private volatile boolean initialized;
+    private volatile long appliedSeq;
+    private volatile long appliedTimeMillis;
+    private volatile long primarySeq;
+    private volatile long entriesApplied;
+    private volatile long snapshotsInstalled;
+
+    private ScheduledExecutorService poller;
+    private ObjectName registered;
+
+    // Makes the replica read-only; nothing is copied until the first poll, which replaces
+    // whatever the replica loaded from its own files.
+    public ReplicaFollower(RentalSystem replica, ReplicationSource source) {
+        this.replica = replica;
+        this.source = source;
+        replica.setReadOnly(true);
+    }
+
+    public RentalSystem getReplica() {
+        return replica;
+    }
+
+    // Applies everything the primary had logged when the poll started (installing a snapshot
+    // first, the first time); returns the number of log entries applied.
+    public synchronized int poll() {
+        if (!initialized) {
+            install(source.snapshot());
+        }
+        long target = source.getLastSeq();
+        int applied = 0;
+        while (appliedSeq < target) {
+            List<ReplicationLog.Entry> entries = source.read(appliedSeq, BATCH_SIZE);
+            if (entries == null) {
+                // Fell behind the log: start over from the primary's current state.
+                install(source.snapshot());
+                target = Math.max(target, appliedSeq);
+                continue;
+            }
+            if (entries.isEmpty()) {
+                break;
+            }
+            replica.applyReplicated(entries);
+            ReplicationLog.Entry last = entries.get(entries.size() - 1);
+            appliedSeq = last.getSeq();
+            appliedTimeMillis = last.getTimeMillis();
+            entriesApplied += entries.size();
+            applied += entries.size();
+        }
+        primarySeq = Math.max(target, appliedSeq);
+        return applied;
+    }
+
+    private void install(ReplicationSnapshot snapshot) {
+        replica.installReplicationSnapshot(snapshot);
+        appliedSeq = snapshot.getSeq();
+        appliedTimeMillis = System.currentTimeMillis();
+        primarySeq = snapshot.getSeq();
+        snapshotsInstalled++;
+        initialized = true;
+    }
+
+    // Polls every period on a background thread until stop().
+    public synchronized void start(long period, TimeUnit unit) {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rental-replica");
+            t.setDaemon(true);
+            return t;
+        });
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                poll();
+            } catch (RuntimeException e) {
+                System.out.println("Error replicating: " + e.getMessage());
+            }
+        }, 0, period, unit);
+    }
+
+    public void stop() {
+        ScheduledExecutorService p;
+        synchronized (this) {
+            p = poller;
+            poller = null;
+        }
+        if (p != null) {
+            p.shutdownNow();
+        }
+    }
+
+    // Exposes the lag metrics as <domain>:type=Replica,name=<name>.
+    public synchronized void register(String domain, String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(domain + ":type=Replica,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        registered = objectName;
+    }
+
+    public synchronized void unregister() {
+        if (registered == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch (JMException e) {
+            // Already gone.
+        }
+        registered = null;
+    }
+
+    @Override
+    public long getAppliedSeq() {
+        return appliedSeq;
+    }
+
+    @Override
+    public long getPrimarySeq() {
+        return primarySeq;
+    }
+
+    @Override
+    public long getLagEntries() {
+        return primarySeq - appliedSeq;
+    }
+
+    @Override
+    public long getLagMillis() {
+        return (primarySeq > appliedSeq) ? Math.max(0, System.currentTimeMillis() - appliedTimeMillis) : 0;
+    }
+
+    @Override
+    public long getEntriesApplied() {
+        return entriesApplied;
+    }
+
+    @Override
+    public long getSnapshotsInstalled() {
+        return snapshotsInstalled;
+    }
+}
@@ -0,0 +1,20 @@
+// JMX view of a read replica's progress through the primary's ReplicationLog.
+public interface ReplicaFollowerMBean {
+    // The last log entry applied to the replica.
+    long getAppliedSeq();
+
+    // The primary's last log entry, as of the latest poll.
+    long getPrimarySeq();
+
+    long getLagEntries();
+
+    // How long ago the primary logged the newest entry the replica has applied, while the
+    // replica is behind; 0 once it has caught up.
+    long getLagMillis();
+
+    long getEntriesApplied();
+
+    // Snapshots of the primary installed: one on the first poll, plus one each time the
+    // replica fell further behind than the primary's log holds.
+    long getSnapshotsInstalled();
+}
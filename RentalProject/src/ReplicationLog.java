@@ -0,0 +1,79 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// The primary's recent changes, in the order they were applied, for followers to tail.
+// Each entry is a journal line tagged with its kind: VEHICLE (a vehicles.txt line), CUSTOMER
+// (a customers.txt line) or RECORD (a rental_records.txt line: RENT, RETURN or STATUS).
+// Entries are numbered from 1 and kept in a fixed-size ring; a follower that falls further
+// behind than the ring holds must catch up from a ReplicationSnapshot instead.
+public class ReplicationLog {
+    public static final char VEHICLE = 'V';
+    public static final char CUSTOMER = 'C';
+    public static final char RECORD = 'R';
+
+    public static class Entry {
+        private final long seq;
+        private final char kind;
+        private final String line;
+        private final long timeMillis;
+
+        Entry(long seq, char kind, String line, long timeMillis) {
+            this.seq = seq;
+            this.kind = kind;
+            this.line = line;
+            this.timeMillis = timeMillis;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public char getKind() {
+            return kind;
+        }
+
+        public String getLine() {
+            return line;
+        }
+
+        // When the primary applied the change, by its clock.
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+    }
+
+    private final Entry[] ring;
+    private long lastSeq;
+
+    public ReplicationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.ring = new Entry[capacity];
+    }
+
+    synchronized long append(char kind, String line) {
+        long seq = ++lastSeq;
+        ring[(int) (seq % ring.length)] = new Entry(seq, kind, line, System.currentTimeMillis());
+        return seq;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    // Up to max entries following afterSeq, oldest first; empty when there are none yet, and
+    // null when some of them have already been overwritten.
+    public synchronized List<Entry> read(long afterSeq, int max) {
+        long first = Math.max(1, lastSeq - ring.length + 1);
+        if (afterSeq + 1 < first) {
+            return null;
+        }
+        long end = Math.min(lastSeq, afterSeq + max);
+        List<Entry> entries = new ArrayList<>((int) Math.max(0, end - afterSeq));
+        for (long seq = afterSeq + 1; seq <= end; seq++) {
+            entries.add(ring[(int) (seq % ring.length)]);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.List;
+
+// The primary's whole state at one point of its ReplicationLog, for a follower to start from:
+// the vehicles (with their statuses) as a VehicleCodec stream, and the customers and rental
+// history as journal lines. The follower then tails the log from getSeq().
+public class ReplicationSnapshot {
+    private final long seq;
+    private final byte[] vehicles;
+    private final List<String> customers;
+    private final List<String> records;
+
+    ReplicationSnapshot(long seq, byte[] vehicles, List<String> customers, List<String> records) {
+        this.seq = seq;
+        this.vehicles = vehicles;
+        this.customers = customers;
+        this.records = records;
+    }
+
+    // The last log entry the snapshot includes.
+    public long getSeq() {
+        return seq;
+    }
+
+    public byte[] getVehicles() {
+        return vehicles;
+    }
+
+    public List<String> getCustomers() {
+        return customers;
+    }
+
+    public List<String> getRecords() {
+        return records;
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.List;
+
+// Where a ReplicaFollower gets the primary's changes from. RentalSystem.startReplication
+// returns one that reads the primary in the same process; a network transport would
+// implement the same three calls.
+public interface ReplicationSource {
+    // Up to max entries following afterSeq; null if they are no longer kept (see ReplicationLog).
+    List<ReplicationLog.Entry> read(long afterSeq, int max);
+
+    // The primary's current state, consistent with the log position it reports.
+    ReplicationSnapshot snapshot();
+
+    // The last entry the primary has logged.
+    long getLastSeq();
+}
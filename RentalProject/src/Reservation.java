@@ -0,0 +1,48 @@
+import java.time.LocalDate;
+
+// An advance booking of a vehicle for the days from startDate to endDate, both inclusive.
+public class Reservation {
+    private final long reservationId;
+    private final Vehicle vehicle;
+    private final Customer customer;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    public Reservation(long reservationId, Vehicle vehicle, Customer customer, LocalDate startDate, LocalDate endDate) {
+        this.reservationId = reservationId;
+        this.vehicle = vehicle;
+        this.customer = customer;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public long getReservationId() {
+        return reservationId;
+    }
+
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public boolean overlaps(LocalDate from, LocalDate to) {
+        return !startDate.isAfter(to) && !endDate.isBefore(from);
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation " + reservationId + " | Plate: " + vehicle.getLicensePlate()
+                + " | Customer: " + customer.getCustomerName() + " | From: " + startDate + " | To: " + endDate;
+    }
+}
@@ -0,0 +1,227 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Index of reservations. A vehicle's bookings never overlap, so its TreeMap keyed by start
+// date works as an interval tree: the only booking that can overlap [from, to] is the last
+// one starting on or before `to`, found in O(log n).
+// For fleet-wide queries the bookings are also kept by start date, in one calendar per length
+// class: class c holds the bookings whose end is less than 2^c days after their start. Such a
+// booking overlaps [from, to] only if it starts between from - (2^c - 1) and to, so a query
+// reads just that slice of each calendar. A long booking widens the slice of its own class
+// only, and the bounds are fixed, so nothing needs recomputing when bookings are removed.
+public class ReservationBook {
+    // Enough classes for any span between LocalDate.MIN and LocalDate.MAX (under 2^39 days).
+    private static final int LENGTH_CLASSES = 40;
+    private static final Comparator<Reservation> BY_START = Comparator.comparing(Reservation::getStartDate)
+            .thenComparingLong(Reservation::getReservationId);
+
+    // Keyed by PlateCodec code.
+    private final IntObjectMap<TreeMap<LocalDate, Reservation>> byVehicle = new IntObjectMap<>();
+    private final List<TreeMap<LocalDate, List<Reservation>>> byStart = new ArrayList<>(LENGTH_CLASSES);
+    private final Map<Long, Reservation> byId = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ReservationBook() {
+        for (int c = 0; c < LENGTH_CLASSES; c++) {
+            byStart.add(new TreeMap<>());
+        }
+    }
+
+    // The length class of a booking: 0 for a single day, c for an end 2^(c-1) to 2^c - 1 days
+    // after the start.
+    private static int lengthClass(Reservation reservation) {
+        long days = reservation.getEndDate().toEpochDay() - reservation.getStartDate().toEpochDay();
+        return 64 - Long.numberOfLeadingZeros(days);
+    }
+
+    // Adds the reservation unless it overlaps one of the vehicle's bookings or its id is taken.
+    public boolean add(Reservation reservation) {
+        int plate = key(reservation.getVehicle());
+        lock.writeLock().lock();
+        try {
+            if (byId.containsKey(reservation.getReservationId())
+                    || overlapping(plate, reservation.getStartDate(), reservation.getEndDate()) != null) {
+                return false;
+            }
+            TreeMap<LocalDate, Reservation> bookings = byVehicle.get(plate);
+            if (bookings == null) {
+                bookings = new TreeMap<>();
+                byVehicle.put(plate, bookings);
+            }
+            bookings.put(reservation.getStartDate(), reservation);
+            TreeMap<LocalDate, List<Reservation>> calendar = byStart.get(lengthClass(reservation));
+            List<Reservation> starting = calendar.get(reservation.getStartDate());
+            if (starting == null) {
+                starting = new ArrayList<>(2);
+                calendar.put(reservation.getStartDate(), starting);
+            }
+            starting.add(reservation);
+            byId.put(reservation.getReservationId(), reservation);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Removes and returns the reservation, or returns null if there is none with this id.
+    public Reservation remove(long reservationId) {
+        lock.writeLock().lock();
+        try {
+            Reservation reservation = byId.remove(reservationId);
+            if (reservation != null) {
+                unindex(reservation);
+            }
+            return reservation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held.
+    private void unindex(Reservation reservation) {
+        int plate = key(reservation.getVehicle());
+        TreeMap<LocalDate, Reservation> bookings = byVehicle.get(plate);
+        bookings.remove(reservation.getStartDate());
+        if (bookings.isEmpty()) {
+            byVehicle.remove(plate);
+        }
+        TreeMap<LocalDate, List<Reservation>> calendar = byStart.get(lengthClass(reservation));
+        List<Reservation> starting = calendar.get(reservation.getStartDate());
+        starting.remove(reservation);
+        if (starting.isEmpty()) {
+            calendar.remove(reservation.getStartDate());
+        }
+    }
+
+    public Reservation find(long reservationId) {
+        lock.readLock().lock();
+        try {
+            return byId.get(reservationId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The vehicle's booking that overlaps [from, to], or null if it is free for those days.
+    public Reservation findOverlapping(Vehicle vehicle, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return overlapping(key(vehicle), from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called with the lock held.
+    private Reservation overlapping(int plate, LocalDate from, LocalDate to) {
+        TreeMap<LocalDate, Reservation> bookings = byVehicle.get(plate);
+        if (bookings == null) {
+            return null;
+        }
+        Map.Entry<LocalDate, Reservation> last = bookings.floorEntry(to);
+        return (last != null && !last.getValue().getEndDate().isBefore(from)) ? last.getValue() : null;
+    }
+
+    // The vehicle's bookings in date order.
+    public List<Reservation> forVehicle(Vehicle vehicle) {
+        lock.readLock().lock();
+        try {
+            TreeMap<LocalDate, Reservation> bookings = byVehicle.get(key(vehicle));
+            return (bookings == null) ? new ArrayList<>() : new ArrayList<>(bookings.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Bookings overlapping [from, to], in start date order.
+    public List<Reservation> overlapping(LocalDate from, LocalDate to) {
+        List<Reservation> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int c = 0; c < LENGTH_CLASSES; c++) {
+                TreeMap<LocalDate, List<Reservation>> calendar = byStart.get(c);
+                if (calendar.isEmpty()) {
+                    continue;
+                }
+                long earliestDay = Math.max(LocalDate.MIN.toEpochDay(), from.toEpochDay() - ((1L << c) - 1));
+                LocalDate earliest = LocalDate.ofEpochDay(earliestDay);
+                if (earliest.isAfter(to)) {
+                    continue;
+                }
+                for (List<Reservation> starting : calendar.subMap(earliest, true, to, true).values()) {
+                    for (Reservation reservation : starting) {
+                        if (!reservation.getEndDate().isBefore(from)) {
+                            result.add(reservation);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.sort(BY_START);
+        return result;
+    }
+
+    // PlateCodec codes of the vehicles booked on any day in [from, to].
+    public IntSet bookedPlates(LocalDate from, LocalDate to) {
+        List<Reservation> booked = overlapping(from, to);
+        IntSet plates = new IntSet(booked.size());
+        for (Reservation reservation : booked) {
+            plates.add(key(reservation.getVehicle()));
+        }
+        return plates;
+    }
+
+    // Every booking in start date order.
+    public List<Reservation> all() {
+        List<Reservation> result;
+        lock.readLock().lock();
+        try {
+            result = new ArrayList<>(byId.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+        result.sort(BY_START);
+        return result;
+    }
+
+    // Drops the bookings that ended before the given day.
+    public void removeEndedBefore(LocalDate day) {
+        lock.writeLock().lock();
+        try {
+            Iterator<Reservation> it = byId.values().iterator();
+            while (it.hasNext()) {
+                Reservation reservation = it.next();
+                if (reservation.getEndDate().isBefore(day)) {
+                    it.remove();
+                    unindex(reservation);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static int key(Vehicle vehicle) {
+        return vehicle.getPlateCode();
+    }
+}
@@ -0,0 +1,125 @@
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+// Revenue rollups over rental records, in cents, per day, month, vehicle type, vehicle and
+// customer. RentalHistory adds every record as it is appended, so revenue queries read a
+// bucket (or one bucket per day of a range) instead of scanning the history.
+// Not thread-safe: RentalHistory guards it with its own lock.
+public class RevenueAggregates {
+
+    // Revenue and number of records in one bucket.
+    public static final class Bucket {
+        private long cents;
+        private int records;
+
+        public long getCents() {
+            return cents;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        void add(long amountCents) {
+            cents += amountCents;
+            records++;
+        }
+
+        void add(Bucket other) {
+            cents += other.cents;
+            records += other.records;
+        }
+    }
+
+    private final Bucket total = new Bucket();
+    private final IntObjectMap<Bucket> byDay = new IntObjectMap<>();      // key: epoch day
+    private final IntObjectMap<Bucket> byMonth = new IntObjectMap<>();    // key: year * 12 + month - 1
+    private final Bucket[] byType = new Bucket[VehicleType.values().length];
+    private final IntObjectMap<Bucket> byVehicle = new IntObjectMap<>(); // key: PlateCodec code
+    private final IntObjectMap<Bucket> byCustomer = new IntObjectMap<>();
+
+    public RevenueAggregates() {
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = new Bucket();
+        }
+    }
+
+    public void add(RentalRecord record) {
+        long cents = Math.round(record.getTotalAmount() * 100);
+        total.add(cents);
+        LocalDate date = record.getRecordDate();
+        if (date != null) {
+            bucket(byDay, (int) date.toEpochDay()).add(cents);
+            bucket(byMonth, monthKey(date.getYear(), date.getMonthValue())).add(cents);
+        }
+        Vehicle vehicle = record.getVehicle();
+        byType[VehicleType.of(vehicle).ordinal()].add(cents);
+        if (vehicle.getPlateCode() != PlateCodec.INVALID) {
+            bucket(byVehicle, vehicle.getPlateCode()).add(cents);
+        }
+        bucket(byCustomer, record.getCustomer().getCustomerId()).add(cents);
+    }
+
+    // Adds every bucket of other into this one (used to combine partial rebuilds).
+    public void merge(RevenueAggregates other) {
+        total.add(other.total);
+        other.byDay.forEach((key, bucket) -> bucket(byDay, key).add(bucket));
+        other.byMonth.forEach((key, bucket) -> bucket(byMonth, key).add(bucket));
+        for (int i = 0; i < byType.length; i++) {
+            byType[i].add(other.byType[i]);
+        }
+        other.byVehicle.forEach((key, bucket) -> bucket(byVehicle, key).add(bucket));
+        other.byCustomer.forEach((key, bucket) -> bucket(byCustomer, key).add(bucket));
+    }
+
+    public long getTotalCents() {
+        return total.cents;
+    }
+
+    public long getDayCents(LocalDate day) {
+        return cents(byDay.get((int) day.toEpochDay()));
+    }
+
+    // Sum of the day buckets from `from` to `to`, both inclusive.
+    public long getRangeCents(LocalDate from, LocalDate to) {
+        long sum = 0;
+        for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+            sum += cents(byDay.get((int) day));
+        }
+        return sum;
+    }
+
+    public long getMonthCents(YearMonth month) {
+        return cents(byMonth.get(monthKey(month.getYear(), month.getMonthValue())));
+    }
+
+    public long getTypeCents(VehicleType type) {
+        return byType[type.ordinal()].cents;
+    }
+
+    public long getVehicleCents(String licensePlate) {
+        int code = PlateCodec.encode(licensePlate);
+        return (code == PlateCodec.INVALID) ? 0 : cents(byVehicle.get(code));
+    }
+
+    public long getCustomerCents(int customerId) {
+        return cents(byCustomer.get(customerId));
+    }
+
+    private static int monthKey(int year, int month) {
+        return year * 12 + month - 1;
+    }
+
+    private static long cents(Bucket bucket) {
+        return (bucket == null) ? 0 : bucket.cents;
+    }
+
+    private static Bucket bucket(IntObjectMap<Bucket> buckets, int key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+}
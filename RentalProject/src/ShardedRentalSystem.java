@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Partitions the fleet and customers across several RentalSystem shards, each with its own
+// data directory (shard-0, shard-1, ... under the cluster directory). A ConsistentHashRing
+// assigns vehicles by plate code and customers by id. Single-vehicle operations go to the
+// shard that owns the vehicle; fleet-wide queries fan out to every shard in parallel and
+// the results are merged.
+// A rental's record lives with the vehicle, so once a rent or return is accepted the
+// customer is also registered on the vehicle's shard (a copy; the owning shard stays the one
+// lookups go to). Reservations
+// are per shard and are not routed here.
+// The shard count is fixed when the cluster directory is created: keys are not moved
+// between shards, so reopening with a different count is refused.
+public class ShardedRentalSystem {
+    private static final String CLUSTER_FILE = "cluster.txt";
+
+    private final List<RentalSystem> shards;
+    private final ConsistentHashRing ring;
+    private final ExecutorService fanOut;
+
+    public ShardedRentalSystem(Path clusterDir, int shardCount) {
+        this(clusterDir, shardCount, Journal.Durability.SYNC_EVERY_COMMIT);
+    }
+
+    public ShardedRentalSystem(Path clusterDir, int shardCount, Journal.Durability durability) {
+        this.ring = new ConsistentHashRing(shardCount);
+        checkShardCount(clusterDir, shardCount);
+        List<RentalSystem> systems = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            Path shardDir = clusterDir.resolve("shard-" + i);
+            try {
+                Files.createDirectories(shardDir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            systems.add(new RentalSystem(shardDir, durability));
+        }
+        this.shards = Collections.unmodifiableList(systems);
+        this.fanOut = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "rental-shard-query");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Records the shard count on first use; afterwards refuses to open with another count.
+    private static void checkShardCount(Path clusterDir, int shardCount) {
+        Path file = clusterDir.resolve(CLUSTER_FILE);
+        try {
+            Files.createDirectories(clusterDir);
+            if (!Files.exists(file)) {
+                Files.write(file, Collections.singletonList("shards," + shardCount), StandardCharsets.UTF_8);
+                return;
+            }
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.startsWith("shards,") && Integer.parseInt(line.substring(7).trim()) != shardCount) {
+                    throw new IllegalArgumentException("Cluster at " + clusterDir + " has "
+                            + line.substring(7).trim() + " shards, not " + shardCount + ".");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public RentalSystem getShard(int index) {
+        return shards.get(index);
+    }
+
+    // Index of the shard that owns the plate, or -1 for an invalid plate.
+    public int shardForPlate(String plate) {
+        int code = PlateCodec.encode(plate);
+        return (code == PlateCodec.INVALID) ? -1 : ring.shardFor(code);
+    }
+
+    public int shardForCustomer(int customerId) {
+        return ring.shardFor(customerId);
+    }
+
+    private RentalSystem owner(Vehicle vehicle) {
+        if (vehicle.getPlateCode() == PlateCodec.INVALID) {
+            throw new IllegalArgumentException("Vehicle has no license plate.");
+        }
+        return shards.get(ring.shardFor(vehicle.getPlateCode()));
+    }
+
+    // --- Routed operations ---
+
+    public boolean addVehicle(Vehicle vehicle) {
+        if (vehicle.getPlateCode() == PlateCodec.INVALID) {
+            System.out.println("Vehicle must have a license plate.");
+            return false;
+        }
+        return owner(vehicle).addVehicle(vehicle);
+    }
+
+    public boolean addCustomer(Customer customer) {
+        return shards.get(shardForCustomer(customer.getCustomerId())).addCustomer(customer);
+    }
+
+    public Vehicle findVehicleByPlate(String plate) {
+        int shard = shardForPlate(plate);
+        return (shard < 0) ? null : shards.get(shard).findVehicleByPlate(plate);
+    }
+
+    public Customer findCustomerById(int id) {
+        return shards.get(shardForCustomer(id)).findCustomerById(id);
+    }
+
+    public boolean rentVehicle(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        RentalSystem shard = owner(vehicle);
+        return registerGuest(shard, customer, shard.rentVehicle(vehicle, customer, date, amount));
+    }
+
+    public boolean returnVehicle(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        RentalSystem shard = owner(vehicle);
+        return registerGuest(shard, customer, shard.returnVehicle(vehicle, customer, date, extraFees));
+    }
+
+    // The shard's future is returned as is; the customer is copied onto the shard once it
+    // completes with an accepted request. A failed future is passed on to the caller.
+    public RentalFuture rentVehicleAsync(Vehicle vehicle, Customer customer, LocalDate date, double amount) {
+        RentalSystem shard = owner(vehicle);
+        RentalFuture result = shard.rentVehicleAsync(vehicle, customer, date, amount);
+        result.thenAccept(accepted -> registerGuest(shard, customer, accepted));
+        return result;
+    }
+
+    public RentalFuture returnVehicleAsync(Vehicle vehicle, Customer customer, LocalDate date, double extraFees) {
+        RentalSystem shard = owner(vehicle);
+        RentalFuture result = shard.returnVehicleAsync(vehicle, customer, date, extraFees);
+        result.thenAccept(accepted -> registerGuest(shard, customer, accepted));
+        return result;
+    }
+
+    public boolean changeStatus(Vehicle vehicle, Vehicle.VehicleStatus status) {
+        return owner(vehicle).changeStatus(vehicle, status);
+    }
+
+    // Once a shard holds a record of the customer, copies the customer onto it so it can
+    // restore the record after a restart. A rejected request leaves the shard untouched.
+    // Returns accepted.
+    private static boolean registerGuest(RentalSystem shard, Customer customer, boolean accepted) {
+        if (accepted && shard.findCustomerById(customer.getCustomerId()) == null) {
+            shard.addCustomers(Collections.singletonList(customer));
+        }
+        return accepted;
+    }
+
+    // --- Fan-out queries ---
+
+    // Runs query on every shard in parallel; results are in shard order.
+    private <T> List<T> fanOut(Function<RentalSystem, T> query) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (RentalSystem shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), fanOut));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    // Concatenates per-shard vehicle lists and sorts them by plate.
+    private static List<Vehicle> mergeVehicles(List<List<Vehicle>> parts) {
+        List<Vehicle> merged = new ArrayList<>();
+        for (List<Vehicle> part : parts) {
+            merged.addAll(part);
+        }
+        merged.sort(Comparator.comparingInt(Vehicle::getPlateCode));
+        return merged;
+    }
+
+    public List<Vehicle> findVehiclesByStatus(Vehicle.VehicleStatus status) {
+        return mergeVehicles(fanOut(shard -> shard.findVehiclesByStatus(status)));
+    }
+
+    public List<Vehicle> findVehiclesByStatus(Vehicle.VehicleStatus status, VehicleType type) {
+        return mergeVehicles(fanOut(shard -> shard.findVehiclesByStatus(status, type)));
+    }
+
+    public List<Vehicle> findAvailableVehicles(LocalDate startDate, LocalDate endDate, VehicleType type) {
+        return mergeVehicles(fanOut(shard -> shard.findAvailableVehicles(startDate, endDate, type)));
+    }
+
+    public int countVehicles(Vehicle.VehicleStatus status) {
+        int total = 0;
+        for (int count : fanOut(shard -> shard.countVehicles(status))) {
+            total += count;
+        }
+        return total;
+    }
+
+    // Merges the shards' matches ranked like CustomerNameIndex: whole-name prefix matches,
+    // then word prefix matches, then other substring matches; by name within each group.
+    // Customers copied onto several shards appear once.
+    public List<Customer> searchCustomersByName(String query, int limit) {
+        if (query == null || query.trim().isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        String q = query.trim().toLowerCase();
+        List<Customer> merged = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (List<Customer> part : fanOut(shard -> shard.searchCustomersByName(query, limit))) {
+            for (Customer customer : part) {
+                if (seen.add(customer.getCustomerId())) {
+                    merged.add(customer);
+                }
+            }
+        }
+        merged.sort(Comparator.<Customer>comparingInt(c -> matchRank(c.getCustomerName().toLowerCase(), q))
+                .thenComparing(c -> c.getCustomerName().toLowerCase())
+                .thenComparingInt(Customer::getCustomerId));
+        return new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+    }
+
+    private static int matchRank(String name, String q) {
+        if (name.startsWith(q)) {
+            return 0;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i - 1)) && name.startsWith(q, i)) {
+                return 1;
+            }
+        }
+        return 2;
+    }
+
+    public long getTotalRevenueCents() {
+        long total = 0;
+        for (long cents : fanOut(shard -> shard.getRentalHistory().getTotalRevenueCents())) {
+            total += cents;
+        }
+        return total;
+    }
+
+    // --- Lifecycle ---
+
+    // Snapshots every shard in parallel; throws the first failure.
+    public void snapshot() throws IOException {
+        List<IOException> failures = fanOut(shard -> {
+            try {
+                shard.snapshot();
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        });
+        for (IOException failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public void shutdown() {
+        fanOut.shutdown();
+        for (RentalSystem shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -18,13 +18,15 @@ public class Truck extends Vehicle implements Rentable {
 
     @Override
     public void rentVehicle() {
-        setStatus(VehicleStatus.RENTED);
-        System.out.println("Truck " + getLicensePlate() + " has been rented.");
+        if (moveTo(VehicleStatus.RENTED)) {
+            System.out.println("Truck " + getLicensePlate() + " has been rented.");
+        }
     }
 
     @Override
     public void returnVehicle() {
-        setStatus(VehicleStatus.AVAILABLE);
-        System.out.println("Truck " + getLicensePlate() + " has been returned.");
+        if (moveTo(VehicleStatus.AVAILABLE)) {
+            System.out.println("Truck " + getLicensePlate() + " has been returned.");
+        }
     }
 }
\ No newline at end of file
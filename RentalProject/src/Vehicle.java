@@ -1,11 +1,39 @@
 public abstract class Vehicle {
     private String licensePlate;
+    private int plateCode = PlateCodec.INVALID;
     private String make;
     private String model;
     private int year;
-    private VehicleStatus status;
+    // Volatile so status reads need no lock; transitions are serialized by RentalSystem.
+    private volatile VehicleStatus status;
+    // Position in its owner's FleetIndex bucket, maintained by FleetIndex; -1 when not indexed.
+    int fleetSlot = -1;
+    // The RentalSystem the vehicle is registered with, or null. A vehicle belongs to at most
+    // one system, so only that system's lock and index ever see it.
+    private RentalSystem owner;
 
-    public enum VehicleStatus { AVAILABLE, RESERVED, RENTED, MAINTENANCE, OUTOFSERVICE }
+    public enum VehicleStatus {
+        AVAILABLE, RESERVED, RENTED, MAINTENANCE, OUTOFSERVICE;
+
+        // Returns true if a vehicle in this status may move to the given status.
+        public boolean canTransitionTo(VehicleStatus next) {
+            switch (this) {
+                case AVAILABLE:
+                    return next != AVAILABLE;
+                case RESERVED:
+                    // Only RentalSystem.rentVehicle may rent a reserved vehicle, to its booker.
+                    return next != RESERVED && next != RENTED;
+                case RENTED:
+                    return next == AVAILABLE;
+                case MAINTENANCE:
+                    return next == AVAILABLE || next == OUTOFSERVICE;
+                case OUTOFSERVICE:
+                    return next == AVAILABLE || next == MAINTENANCE;
+                default:
+                    return false;
+            }
+        }
+    }
 
     public Vehicle(String make, String model, int year) {
         // Use helper method to format make and model.
@@ -27,25 +55,27 @@ public abstract class Vehicle {
         return input.substring(0, 1).toUpperCase() + input.substring(1).toLowerCase();
     }
 
-    // Private method to validate the license plate.
+    // Validates the license plate.
     // Returns true only if the plate is not null, not empty,
-    // and follows the format of exactly three letters followed by three digits.
-    private boolean isValidPlate(String plate) {
-        if (plate == null || plate.trim().isEmpty()) {
-            return false;
-        }
-        // Convert to uppercase for consistent checking.
-        String formattedPlate = plate.toUpperCase();
-        // Validate that it is exactly three letters and three digits.
-        return formattedPlate.matches("^[A-Z]{3}[0-9]{3}$");
+    // and follows the format of exactly three letters (either case) followed by three digits.
+    static boolean isValidPlate(String plate) {
+        return PlateCodec.isValid(plate);
     }
 
     // Updated setLicensePlate method: validates the plate and throws exception if invalid.
     public void setLicensePlate(String plate) {
-        if (!isValidPlate(plate)) {
+        int code = PlateCodec.encode(plate);
+        if (code == PlateCodec.INVALID) {
             throw new IllegalArgumentException("Invalid license plate. Must be three letters followed by three numbers.");
         }
         this.licensePlate = plate.toUpperCase();
+        this.plateCode = code;
+    }
+
+    // The plate packed by PlateCodec (the key used by the lookup and history indexes), or
+    // PlateCodec.INVALID while no plate is set.
+    public int getPlateCode() {
+        return plateCode;
     }
 
     public String getLicensePlate() { 
@@ -68,10 +98,50 @@ public abstract class Vehicle {
         return status; 
     }
 
-    public void setStatus(VehicleStatus status) { 
+    // Only for vehicles not registered yet (loaders, tests); a registered vehicle changes
+    // status through its RentalSystem.
+    void setStatus(VehicleStatus status) { 
         this.status = status; 
     }
 
+    // Claims the vehicle for system; false if another system already registered it.
+    synchronized boolean registerWith(RentalSystem system) {
+        if (owner != null && owner != system) {
+            return false;
+        }
+        owner = system;
+        return true;
+    }
+
+    synchronized void unregisterFrom(RentalSystem system) {
+        if (owner == system) {
+            owner = null;
+        }
+    }
+
+    synchronized RentalSystem getOwner() {
+        return owner;
+    }
+
+    // Used by the Rentable methods: a registered vehicle moves through its system, which
+    // refuses renting and returning there (they need a customer and a record) and handles
+    // the other moves under the vehicle's lock; an unregistered one just checks the
+    // transition. Returns false if it is not allowed.
+    boolean moveTo(VehicleStatus next) {
+        RentalSystem system = getOwner();
+        if (system != null) {
+            return system.changeRentableStatus(this, next);
+        }
+        synchronized (this) {
+            if (!status.canTransitionTo(next)) {
+                System.out.println("Vehicle cannot move from " + status + " to " + next + ".");
+                return false;
+            }
+            status = next;
+            return true;
+        }
+    }
+
     public String getInfo() {
         return "| " + licensePlate + " | " + make + " | " + model + " | " + year + " | " + status + " |";
     }
@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary encoding of the Vehicle hierarchy, used for snapshots. A stream starts with
+// the magic bytes "RV" and a format version, followed by one entry per vehicle:
+//   tag (1 byte: CAR, SPORT_CAR, MOTORCYCLE, TRUCK, OTHER), plate code (4 bytes, see PlateCodec),
+//   make, model (string refs), year (varint), status (1 byte), then the subtype's fields:
+//     CAR         seats (varint)
+//     SPORT_CAR   seats, horsepower (varints), turbo (1 byte)
+//     MOTORCYCLE  sidecar (1 byte)
+//     TRUCK       cargo capacity (8-byte double)
+//     OTHER       nothing; read back as a four-seat Car, as the text journal's untyped lines are
+// Makes and models repeat across a fleet, so each distinct string is written once: a string
+// ref is a varint, 0 for null, 1 for a new string (UTF-8 length and bytes follow; it takes the
+// next dictionary index), or 2 + the index of a string written earlier in the same stream.
+public final class VehicleCodec {
+    public static final int VERSION = 1;
+    private static final byte MAGIC_0 = 'R';
+    private static final byte MAGIC_1 = 'V';
+
+    private static final byte TAG_CAR = 1;
+    private static final byte TAG_SPORT_CAR = 2;
+    private static final byte TAG_MOTORCYCLE = 3;
+    private static final byte TAG_TRUCK = 4;
+    private static final byte TAG_OTHER = 5;
+    private static final int DEFAULT_SEATS = 4;
+
+    private static final Vehicle.VehicleStatus[] STATUSES = Vehicle.VehicleStatus.values();
+
+    private VehicleCodec() {
+    }
+
+    // Appends encoded vehicles to an in-memory buffer; not thread-safe.
+    public static final class Encoder {
+        private byte[] buf = new byte[4096];
+        private int pos;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        public Encoder() {
+            ensure(3);
+            buf[pos++] = MAGIC_0;
+            buf[pos++] = MAGIC_1;
+            buf[pos++] = VERSION;
+        }
+
+        public void encode(Vehicle vehicle) {
+            VehicleType type = VehicleType.of(vehicle);
+            ensure(2 + 4 + 1);
+            switch (type) {
+                case CAR: buf[pos++] = TAG_CAR; break;
+                case SPORT_CAR: buf[pos++] = TAG_SPORT_CAR; break;
+                case MOTORCYCLE: buf[pos++] = TAG_MOTORCYCLE; break;
+                case TRUCK: buf[pos++] = TAG_TRUCK; break;
+                default: buf[pos++] = TAG_OTHER; break;
+            }
+            writeInt(vehicle.getPlateCode());
+            writeString(vehicle.getMake());
+            writeString(vehicle.getModel());
+            writeVarInt(zigZag(vehicle.getYear()));
+            ensure(1);
+            buf[pos++] = (byte) vehicle.getStatus().ordinal();
+            switch (type) {
+                case SPORT_CAR:
+                    SportCar sportCar = (SportCar) vehicle;
+                    writeVarInt(zigZag(sportCar.getNumSeats()));
+                    writeVarInt(zigZag(sportCar.getHorsepower()));
+                    ensure(1);
+                    buf[pos++] = (byte) (sportCar.hasTurbo() ? 1 : 0);
+                    break;
+                case CAR:
+                    writeVarInt(zigZag(((Car) vehicle).getNumSeats()));
+                    break;
+                case MOTORCYCLE:
+                    ensure(1);
+                    buf[pos++] = (byte) (((Motorcycle) vehicle).hasSidecar() ? 1 : 0);
+                    break;
+                case TRUCK:
+                    long bits = Double.doubleToLongBits(((Truck) vehicle).getCargoCapacity());
+                    writeInt((int) (bits >>> 32));
+                    writeInt((int) bits);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        public int size() {
+            return pos;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, pos);
+        }
+
+        private void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = dictionary.get(s);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            dictionary.put(s, dictionary.size());
+            writeVarInt(1);
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void writeInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        private void writeVarInt(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void ensure(int bytes) {
+            if (pos + bytes > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + bytes));
+            }
+        }
+    }
+
+    // Reads vehicles back from a buffer written by Encoder, from its position to its limit.
+    public static final class Decoder {
+        private final ByteBuffer in;
+        private final List<String> dictionary = new ArrayList<>();
+
+        // Throws IllegalArgumentException if the buffer does not start with a known version.
+        public Decoder(ByteBuffer in) {
+            this.in = in;
+            if (in.remaining() < 3 || in.get() != MAGIC_0 || in.get() != MAGIC_1) {
+                throw new IllegalArgumentException("Not an encoded vehicle stream.");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported vehicle encoding version " + version);
+            }
+        }
+
+        public boolean hasNext() {
+            return in.hasRemaining();
+        }
+
+        // Throws IllegalArgumentException for a corrupt or truncated entry.
+        public Vehicle next() {
+            try {
+                byte tag = in.get();
+                int plate = in.getInt();
+                String make = readString();
+                String model = readString();
+                int year = unZigZag(readVarInt());
+                int status = in.get();
+                if (status < 0 || status >= STATUSES.length) {
+                    throw new IllegalArgumentException("Bad vehicle status " + status);
+                }
+                Vehicle vehicle;
+                switch (tag) {
+                    case TAG_CAR:
+                        vehicle = new Car(make, model, year, unZigZag(readVarInt()));
+                        break;
+                    case TAG_SPORT_CAR:
+                        int seats = unZigZag(readVarInt());
+                        int horsepower = unZigZag(readVarInt());
+                        vehicle = new SportCar(make, model, year, seats, horsepower, in.get() != 0);
+                        break;
+                    case TAG_MOTORCYCLE:
+                        vehicle = new Motorcycle(make, model, year, in.get() != 0);
+                        break;
+                    case TAG_TRUCK:
+                        vehicle = new Truck(make, model, year, in.getDouble());
+                        break;
+                    case TAG_OTHER:
+                        vehicle = new Car(make, model, year, DEFAULT_SEATS);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Bad vehicle tag " + tag);
+                }
+                if (plate != PlateCodec.INVALID) {
+                    vehicle.setLicensePlate(PlateCodec.decode(plate));
+                }
+                vehicle.setStatus(STATUSES[status]);
+                return vehicle;
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Truncated vehicle entry.");
+            }
+        }
+
+        private String readString() {
+            int ref = readVarInt();
+            if (ref == 0) {
+                return null;
+            }
+            if (ref == 1) {
+                int length = readVarInt();
+                if (length < 0 || length > in.remaining()) {
+                    throw new IllegalArgumentException("Bad string length " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.get(bytes);
+                String s = new String(bytes, StandardCharsets.UTF_8);
+                dictionary.add(s);
+                return s;
+            }
+            if (ref - 2 >= dictionary.size()) {
+                throw new IllegalArgumentException("Bad string reference " + ref);
+            }
+            return dictionary.get(ref - 2);
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Bad varint.");
+        }
+    }
+
+    private static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unZigZag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
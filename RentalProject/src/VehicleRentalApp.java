@@ -1,11 +1,25 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class VehicleRentalApp {
     public static void main(String[] args) {
-        Scanner scanner = new Scanner(System.in);
         // Use the Singleton instance.
         RentalSystem rentalSystem = RentalSystem.getInstance();
+        if (args.length > 0 && args[0].equals("--serve")) {
+            runServer(rentalSystem, args);
+            return;
+        }
+        if (args.length > 0) {
+            runImport(rentalSystem, args);
+            return;
+        }
+        Scanner scanner = new Scanner(System.in);
+        // Periodically snapshot the fleet so restarts only replay recent changes.
+        rentalSystem.scheduleSnapshots(Long.getLong("rental.snapshot.minutes", 10L), TimeUnit.MINUTES);
 
         while (true) {
             System.out.println("\n1: Add Vehicle\n2: Add Customer\n3: Rent Vehicle\n4: Return Vehicle\n5: Display Available Vehicles\n6: Show Rental History\n7: Exit");
@@ -137,6 +151,7 @@ public class VehicleRentalApp {
 
                 case 7:
                     scanner.close();
+                    rentalSystem.shutdown();
                     System.exit(0);
                     break;
 
@@ -145,4 +160,54 @@ public class VehicleRentalApp {
             }
         }
     }
+
+    // Server mode: --serve [port] serves HTTP requests (see RentalServer) until the JVM is stopped.
+    private static void runServer(RentalSystem rentalSystem, String[] args) {
+        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 8080;
+        try {
+            RentalServer server = new RentalServer(rentalSystem, port);
+            rentalSystem.scheduleSnapshots(Long.getLong("rental.snapshot.minutes", 10L), TimeUnit.MINUTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            server.start();
+            System.out.println("Serving on port " + server.getPort() + ".");
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+            rentalSystem.shutdown();
+            System.exit(1);
+        }
+    }
+
+    // Non-interactive mode: --import-vehicles <file> and/or --import-customers <file>.
+    private static void runImport(RentalSystem rentalSystem, String[] args) {
+        BulkImporter importer = new BulkImporter(rentalSystem, BulkImporter.DEFAULT_BATCH_SIZE,
+                report -> System.out.println("  " + report));
+        int status = 0;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length
+                    || !(option.equals("--import-vehicles") || option.equals("--import-customers"))) {
+                System.out.println("Usage: VehicleRentalApp [--import-vehicles <file>] [--import-customers <file>]");
+                status = 2;
+                break;
+            }
+            Path file = Paths.get(args[++i]);
+            System.out.println("Importing " + file + "...");
+            try {
+                BulkImporter.ImportReport report = option.equals("--import-vehicles")
+                        ? importer.importVehicles(file) : importer.importCustomers(file);
+                System.out.println("Done. " + report);
+                for (String rejection : report.getRejections()) {
+                    System.out.println("  Rejected " + rejection);
+                }
+                if (report.getRejected() > report.getRejections().size()) {
+                    System.out.println("  ... and " + (report.getRejected() - report.getRejections().size()) + " more.");
+                }
+            } catch (IOException e) {
+                System.out.println("Error importing " + file + ": " + e.getMessage());
+                status = 1;
+            }
+        }
+        rentalSystem.shutdown();
+        System.exit(status);
+    }
 }
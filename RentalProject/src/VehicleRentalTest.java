@@ -1,10 +1,40 @@
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class VehicleRentalTest {
 
@@ -17,6 +47,29 @@ public class VehicleRentalTest {
         rentalSystem = RentalSystem.getInstance();
         // If needed, clear previous state here so tests run cleanly.
     }
+
+    // Temporary directories created by the current test, deleted after it.
+    private final List<Path> tempDirs = new ArrayList<>();
+
+    private Path tempDir(String prefix) throws IOException {
+        Path dir = Files.createTempDirectory(prefix);
+        tempDirs.add(dir);
+        return dir;
+    }
+
+    @AfterEach
+    public void deleteTempDirs() throws IOException {
+        for (Path dir : tempDirs) {
+            List<Path> paths;
+            try (Stream<Path> walk = Files.walk(dir)) {
+                paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+        tempDirs.clear();
+    }
     
     /**
      * Test License Plate Validation in the Vehicle class.
@@ -45,6 +98,34 @@ public class VehicleRentalTest {
         assertEquals("ZZZ999", car4.getLicensePlate());
     }
     
+    /**
+     * Test that plates round-trip through their int codes and invalid plates are rejected.
+     */
+    @Test
+    public void testPlateCodec() {
+        assertEquals(0, PlateCodec.encode("AAA000"));
+        assertEquals(PlateCodec.MAX_CODE, PlateCodec.encode("ZZZ999"));
+        assertEquals(PlateCodec.encode("ABC123"), PlateCodec.encode("abc123"));
+        assertEquals("ABC123", PlateCodec.decode(PlateCodec.encode("aBc123")));
+        for (String invalid : new String[] {null, "", "AB1234", "ABC12", "ABC1234", "A1C123", "\u00c0BC123", "ABC12X"}) {
+            assertEquals(PlateCodec.INVALID, PlateCodec.encode(invalid), String.valueOf(invalid));
+        }
+        ByteBuffer bytes = ByteBuffer.wrap("RENT,xyz789,1".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(PlateCodec.encode("XYZ789"), PlateCodec.encode(bytes, 5, 11));
+
+        // Every code decodes to a plate that encodes back to it.
+        Set<String> seen = new HashSet<>();
+        for (int code = 0; code <= PlateCodec.MAX_CODE; code += 7919) {
+            String plate = PlateCodec.decode(code);
+            assertTrue(seen.add(plate));
+            assertEquals(code, PlateCodec.encode(plate));
+        }
+        Car car = new Car("Fiat", "Panda", 2020, 4);
+        assertEquals(PlateCodec.INVALID, car.getPlateCode());
+        car.setLicensePlate("pcd001");
+        assertEquals(PlateCodec.encode("PCD001"), car.getPlateCode());
+    }
+
     /**
      * Test Rent/Return Vehicle Validation.
      */
@@ -81,6 +162,1340 @@ public class VehicleRentalTest {
         assertFalse(returnAgain, "Returning an already available vehicle should fail");
     }
     
+    /**
+     * Test indexed lookups and duplicate checks for vehicles and customers.
+     */
+    @Test
+    public void testLookupAndDuplicateChecks() throws IOException {
+        RentalSystem system = new RentalSystem(tempDir("rental-lookup"));
+        Car car = new Car("Mazda", "Three", 2022, 5);
+        car.setLicensePlate("LKP101");
+        system.addVehicle(car);
+
+        // Lookups are case-insensitive and a second vehicle with the same plate is rejected.
+        assertNotNull(system.findVehicleByPlate("lkp101"), "Vehicle should be found regardless of case");
+        Car duplicate = new Car("Mazda", "Six", 2023, 5);
+        duplicate.setLicensePlate("lkp101");
+        assertFalse(system.addVehicle(duplicate), "Duplicate plate should be rejected");
+        assertNull(system.findVehicleByPlate("ZZZ000"), "Unknown plate should not be found");
+
+        system.addCustomer(new Customer(9001, "Jane Roe"));
+        assertEquals(9001, system.findCustomerById("9001").getCustomerId());
+        assertFalse(system.addCustomer(new Customer(9001, "Someone Else")), "Duplicate ID should be rejected");
+        assertNull(system.findCustomerById(9002), "Unknown ID should not be found");
+        system.shutdown();
+    }
+    
+    /**
+     * Stress test: many threads racing on a few vehicles must never double-rent one.
+     */
+    @Test
+    public void testConcurrentRentNeverDoubleRents() throws Exception {
+        final int vehicleCount = 8;
+        final int threadCount = 16;
+        final int attemptsPerThread = 300;
+        final Car[] cars = new Car[vehicleCount];
+        final AtomicInteger[] holders = new AtomicInteger[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            cars[i] = new Car("Kia", "Rio", 2020, 4);
+            cars[i].setLicensePlate("STR" + (100 + i));
+            holders[i] = new AtomicInteger();
+        }
+        final RentalSystem system = new RentalSystem(tempDir("rental-stress"), Journal.Durability.NO_SYNC);
+        for (Car car : cars) {
+            system.addVehicle(car);
+        }
+        final Customer customer = new Customer(9100, "Stress Tester");
+        system.addCustomer(customer);
+        final AtomicInteger doubleRents = new AtomicInteger();
+        final AtomicInteger[] winners = new AtomicInteger[vehicleCount];
+        for (int i = 0; i < vehicleCount; i++) {
+            winners[i] = new AtomicInteger();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final long seed = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                Random random = new Random(seed);
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    int v = random.nextInt(vehicleCount);
+                    if (system.rentVehicle(cars[v], customer, LocalDate.now(), 1.0)) {
+                        // Only the thread that won the rent may hold the vehicle.
+                        if (holders[v].incrementAndGet() != 1) {
+                            doubleRents.incrementAndGet();
+                        }
+                        holders[v].decrementAndGet();
+                        assertTrue(system.returnVehicle(cars[v], customer, LocalDate.now(), 0.0));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES), "Stress threads should finish");
+        for (Future<Object> result : results) {
+            result.get(); // Rethrows any assertion that failed on a worker thread.
+        }
+        assertEquals(0, doubleRents.get(), "No vehicle may be rented twice at once");
+
+        // Every thread races for every vehicle exactly once: one winner per vehicle.
+        ExecutorService racers = Executors.newFixedThreadPool(threadCount);
+        final CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < threadCount; t++) {
+            racers.submit(() -> {
+                go.await();
+                for (int v = 0; v < vehicleCount; v++) {
+                    if (system.rentVehicle(cars[v], customer, LocalDate.now(), 1.0)) {
+                        winners[v].incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        go.countDown();
+        racers.shutdown();
+        assertTrue(racers.awaitTermination(2, TimeUnit.MINUTES), "Racing threads should finish");
+        for (int v = 0; v < vehicleCount; v++) {
+            assertEquals(1, winners[v].get(), "Exactly one rent should win for " + cars[v].getLicensePlate());
+            assertEquals(Vehicle.VehicleStatus.RENTED, cars[v].getStatus());
+        }
+        system.shutdown();
+    }
+
+    /**
+     * Test the status transitions allowed outside of renting and returning.
+     */
+    @Test
+    public void testStatusTransitions() throws Exception {
+        Car car = new Car("Subaru", "Impreza", 2018, 5);
+        car.setLicensePlate("STS100");
+        Customer customer = new Customer(9101, "Status Tester");
+        RentalSystem system = new RentalSystem(tempDir("rental-status"));
+        system.addVehicle(car);
+        system.addCustomer(customer);
+
+        assertTrue(system.changeStatus(car, Vehicle.VehicleStatus.MAINTENANCE));
+        assertFalse(system.rentVehicle(car, customer, LocalDate.now(), 50.0), "Vehicle in maintenance cannot be rented");
+        assertFalse(system.changeStatus(car, Vehicle.VehicleStatus.RESERVED), "Maintenance cannot go straight to reserved");
+        assertTrue(system.changeStatus(car, Vehicle.VehicleStatus.OUTOFSERVICE));
+        assertTrue(system.changeStatus(car, Vehicle.VehicleStatus.AVAILABLE));
+
+        assertTrue(system.rentVehicle(car, customer, LocalDate.now(), 50.0));
+        assertFalse(system.changeStatus(car, Vehicle.VehicleStatus.MAINTENANCE), "A rented vehicle must be returned first");
+        assertFalse(system.changeStatus(car, Vehicle.VehicleStatus.RENTED), "Renting must go through rentVehicle");
+        assertTrue(system.returnVehicle(car, customer, LocalDate.now(), 0.0));
+        system.shutdown();
+    }
+    
+    /**
+     * Test that concurrent journal appends are all committed, whole and in one file.
+     */
+    @Test
+    public void testJournalGroupCommit() throws Exception {
+        Path file = Files.createTempFile("journal", ".txt");
+        final int threadCount = 8;
+        final int linesPerThread = 500;
+        final Journal journal = new Journal(file, Journal.Durability.SYNC_EVERY_COMMIT, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        List<Future<Object>> results = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < linesPerThread; i++) {
+                    journal.append("thread-" + thread + "-line-" + i);
+                }
+                return null;
+            }));
+        }
+        pool.shutdown();
+        for (Future<Object> result : results) {
+            result.get();
+        }
+        assertThrows(IllegalArgumentException.class, () -> journal.awaitCommit(threadCount * linesPerThread + 1));
+        journal.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Set<String> unique = new HashSet<>(lines);
+        assertEquals(threadCount * linesPerThread, lines.size(), "Every append should be written once");
+        assertEquals(lines.size(), unique.size(), "No line should be duplicated");
+        assertTrue(unique.contains("thread-7-line-499"));
+        assertThrows(IOException.class, () -> journal.append("after close"));
+        Files.delete(file);
+
+        // The first failed write fails the journal for good (writes to /dev/full always fail).
+        Path full = Paths.get("/dev/full");
+        if (Files.isWritable(full)) {
+            Journal failing = new Journal(full, Journal.Durability.NO_SYNC, 0);
+            long first = failing.enqueue("lost");
+            long second = failing.enqueue("lost too");
+            assertThrows(IOException.class, () -> failing.awaitCommit(first));
+            assertThrows(IOException.class, () -> failing.awaitCommit(second));
+            assertTrue(failing.isFailed());
+            assertThrows(IOException.class, () -> failing.enqueue("rejected"));
+            assertThrows(IOException.class, failing::close);
+
+            // A RentalSystem reports the failed save and then refuses every change.
+            Path dir = tempDir("rental-full");
+            Files.createSymbolicLink(dir.resolve("rental_records.txt"), full);
+            RentalSystem system = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+            Car car = new Car("Fiat", "Panda", 2019, 4);
+            car.setLicensePlate("FUL001");
+            Car other = new Car("Fiat", "Uno", 2018, 4);
+            other.setLicensePlate("FUL002");
+            Customer customer = new Customer(1, "Full Disk");
+            system.addVehicle(car);
+            system.addVehicle(other);
+            system.addCustomer(customer);
+            assertFalse(system.rentVehicle(car, customer, LocalDate.now(), 10.0));
+            assertFalse(system.rentVehicle(other, customer, LocalDate.now(), 10.0));
+            assertEquals(Vehicle.VehicleStatus.AVAILABLE, other.getStatus());
+            assertFalse(system.addVehicle(new Car("Fiat", "Tipo", 2020, 5)));
+            system.shutdown();
+
+            // Adding a vehicle that cannot be saved is not reported as a success either.
+            Path vehiclesDir = tempDir("rental-full-vehicles");
+            Files.createSymbolicLink(vehiclesDir.resolve("vehicles.txt"), full);
+            RentalSystem vehicleSystem = new RentalSystem(vehiclesDir, Journal.Durability.NO_SYNC);
+            Car unsaved = new Car("Fiat", "Punto", 2017, 5);
+            unsaved.setLicensePlate("FUL003");
+            assertFalse(vehicleSystem.addVehicle(unsaved));
+            assertFalse(vehicleSystem.addCustomer(new Customer(2, "Refused")));
+            assertNull(vehicleSystem.findCustomerById(2));
+            vehicleSystem.shutdown();
+
+            // Nor are batch items whose commit failed.
+            Path batchDir = tempDir("rental-full-batch");
+            Files.createSymbolicLink(batchDir.resolve("customers.txt"), full);
+            RentalSystem batchSystem = new RentalSystem(batchDir, Journal.Durability.NO_SYNC);
+            BatchResult<Customer> unsavedCustomers = batchSystem.addCustomers(
+                    Arrays.asList(new Customer(3, "Lost One"), new Customer(4, "Lost Two")));
+            assertEquals(0, unsavedCustomers.getSuccessCount());
+            assertEquals(2, unsavedCustomers.getFailureCount());
+            assertFalse(unsavedCustomers.getItems().get(0).isSuccess());
+            batchSystem.shutdown();
+        }
+    }
+    
+    /**
+     * Test that a snapshot plus the log tail restores the fleet and history and compacts covered logs.
+     */
+    @Test
+    public void testSnapshotAndCompaction() throws Exception {
+        Path dir = tempDir("rental-snapshot");
+        RentalSystem system = new RentalSystem(dir);
+        Car rented = new Car("Toyota", "Yaris", 2020, 4);
+        rented.setLicensePlate("SNP001");
+        Car serviced = new Car("Honda", "Fit", 2019, 4);
+        serviced.setLicensePlate("SNP002");
+        Car late = new Car("Ford", "Fiesta", 2018, 4);
+        late.setLicensePlate("SNP003");
+        Customer customer = new Customer(1, "Snap Shot");
+        system.addVehicle(rented);
+        system.addVehicle(serviced);
+        system.addCustomer(customer);
+        assertTrue(system.rentVehicle(rented, customer, LocalDate.now(), 80.0));
+        assertTrue(system.changeStatus(serviced, Vehicle.VehicleStatus.MAINTENANCE));
+        system.snapshot();
+
+        // Changes after the snapshot live only in the log tail.
+        system.addVehicle(late);
+        assertTrue(system.rentVehicle(late, customer, LocalDate.now(), 60.0));
+        assertTrue(system.returnVehicle(rented, customer, LocalDate.now(), 5.0));
+        system.shutdown();
+
+        assertFalse(Files.exists(dir.resolve("vehicles.1.txt")), "Covered vehicle log should be compacted");
+        assertTrue(Files.exists(dir.resolve("rental_records.1.txt")), "Covered records are kept as history");
+        assertEquals(1, Files.readAllLines(dir.resolve("vehicles.txt")).size(), "Only the tail remains in the journal");
+
+        RentalSystem reloaded = new RentalSystem(dir);
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, reloaded.findVehicleByPlate("SNP001").getStatus());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, reloaded.findVehicleByPlate("SNP002").getStatus());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reloaded.findVehicleByPlate("SNP003").getStatus());
+        assertEquals("Snap Shot", reloaded.findCustomerById(1).getCustomerName());
+
+        // History is restored from the covered segment and the tail, in order.
+        List<RentalRecord> history = reloaded.getRentalHistory().getRentalHistory();
+        assertEquals(3, history.size());
+        assertEquals("RENT", history.get(0).getRecordType());
+        assertSame(reloaded.findVehicleByPlate("SNP001"), history.get(0).getVehicle());
+        assertSame(reloaded.findCustomerById(1), history.get(0).getCustomer());
+        assertEquals(80.0, history.get(0).getTotalAmount(), 0.001);
+        assertEquals("RETURN", history.get(2).getRecordType());
+        reloaded.shutdown();
+
+        // Records added while older ones load in the background come after them.
+        RentalHistory deferred = new RentalHistory();
+        deferred.deferLoading();
+        RentalRecord older = new RentalRecord(rented, customer, LocalDate.of(2024, 1, 1), 10.0, "RENT");
+        RentalRecord newer = new RentalRecord(rented, customer, LocalDate.of(2024, 1, 2), 1.0, "RETURN");
+        deferred.addRecord(newer);
+        assertTrue(deferred.isLoading());
+        deferred.finishLoading(Arrays.asList(older));
+        assertFalse(deferred.isLoading());
+        assertEquals(Arrays.asList(older, newer), deferred.getRentalHistory());
+        assertEquals(1100, deferred.getTotalRevenueCents());
+    }
+    
+    /**
+     * Test history lookups by plate, customer id and customer name.
+     */
+    @Test
+    public void testRentalHistoryQueries() {
+        RentalHistory history = new RentalHistory();
+        Car car = new Car("Toyota", "Prius", 2021, 5);
+        car.setLicensePlate("HIS001");
+        Truck truck = new Truck("Volvo", "Fh", 2017, 20.0);
+        truck.setLicensePlate("HIS002");
+        Customer alice = new Customer(11, "Alice Smith");
+        Customer bob = new Customer(12, "Bob Smithers");
+        history.addRecord(new RentalRecord(car, alice, LocalDate.of(2025, 1, 1), 100.0, "RENT"));
+        history.addRecord(new RentalRecord(truck, bob, LocalDate.of(2025, 1, 2), 300.0, "RENT"));
+        history.addRecord(new RentalRecord(car, alice, LocalDate.of(2025, 1, 3), 0.0, "RETURN"));
+        history.addRecord(new RentalRecord(car, bob, LocalDate.of(2025, 1, 4), 90.0, "RENT"));
+
+        assertEquals(3, history.getRentalRecordsByVehicle("his001").size());
+        assertEquals(0, history.getRentalRecordsByVehicle("HIS999").size());
+        assertEquals(2, history.getRentalRecordsByCustomerId(11).size());
+        assertEquals(0, history.getRentalRecordsByCustomerId(99).size());
+
+        // Name matches span customers and keep history order.
+        List<RentalRecord> smiths = history.getRentalRecordsByCustomer("SMITH");
+        assertEquals(4, smiths.size());
+        for (int i = 0; i < smiths.size(); i++) {
+            assertEquals(LocalDate.of(2025, 1, i + 1), smiths.get(i).getRecordDate());
+        }
+        assertEquals(2, history.getRentalRecordsByCustomer("bob").size());
+    }
+    
+    /**
+     * Test ranked prefix and infix customer name search.
+     */
+    @Test
+    public void testCustomerNameSearch() {
+        CustomerNameIndex index = new CustomerNameIndex();
+        index.add(new Customer(1, "Smithers Jones"));
+        index.add(new Customer(2, "Alice Smith"));
+        index.add(new Customer(3, "Smith"));
+        index.add(new Customer(4, "Goldsmith Carter"));
+        index.add(new Customer(5, "Bob Brown"));
+
+        List<Customer> found = index.search("SMITH", 10);
+        assertEquals(4, found.size());
+        assertEquals(3, found.get(0).getCustomerId(), "Exact name ranks first");
+        assertEquals(1, found.get(1).getCustomerId(), "Then names starting with the query");
+        assertEquals(2, found.get(2).getCustomerId(), "Then a later word starting with the query");
+        assertEquals(4, found.get(3).getCustomerId(), "Then the query anywhere in the name");
+
+        assertEquals(2, index.search("smith", 2).size(), "Results are limited");
+        assertEquals(1, index.search("bro", 10).size());
+        assertEquals(0, index.search("xyz", 10).size());
+        // Queries too short for a trigram still match anywhere in the name.
+        assertEquals(4, index.search("ar", 10).get(0).getCustomerId());
+        assertEquals(3, index.search("e", 10).size());
+    }
+    
+    /**
+     * Test that the per-status fleet counters follow every transition.
+     */
+    @Test
+    public void testFleetStatusCounts() throws Exception {
+        RentalSystem system = new RentalSystem(tempDir("rental-fleet"));
+        Truck truck = new Truck("Ford", "F150", 2020, 3.0);
+        truck.setLicensePlate("FLT001");
+        Car car = new Car("Honda", "Accord", 2021, 5);
+        car.setLicensePlate("FLT002");
+        Motorcycle bike = new Motorcycle("Honda", "Cbr", 2022, false);
+        bike.setLicensePlate("FLT003");
+        Customer customer = new Customer(1, "Fleet Counter");
+        system.addVehicle(truck);
+        system.addVehicle(car);
+        system.addVehicle(bike);
+        system.addCustomer(customer);
+        assertEquals(3, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE, VehicleType.TRUCK));
+
+        system.rentVehicle(truck, customer, LocalDate.now(), 200.0);
+        system.changeStatus(bike, Vehicle.VehicleStatus.MAINTENANCE);
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        assertEquals(0, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE, VehicleType.TRUCK));
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.RENTED, VehicleType.TRUCK));
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.MAINTENANCE));
+        assertSame(car, system.findVehiclesByStatus(Vehicle.VehicleStatus.AVAILABLE).get(0));
+
+        system.returnVehicle(truck, customer, LocalDate.now(), 0.0);
+        assertEquals(2, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        assertEquals(0, system.countVehicles(Vehicle.VehicleStatus.RENTED));
+
+        // The Rentable methods cannot rent a registered vehicle behind the system's back, but
+        // other moves go through it.
+        car.rentVehicle();
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, car.getStatus());
+        assertEquals(0, system.countVehicles(Vehicle.VehicleStatus.RENTED));
+        bike.returnVehicle();
+        assertEquals(3, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        assertEquals(0, system.countVehicles(Vehicle.VehicleStatus.MAINTENANCE));
+
+        // A vehicle belongs to one system only.
+        RentalSystem other = new RentalSystem(tempDir("rental-fleet-other"));
+        assertFalse(other.addVehicle(car));
+        assertEquals(0, other.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        other.shutdown();
+        system.shutdown();
+    }
+    
+    /**
+     * Test that batch operations report each item and persist the accepted ones.
+     */
+    @Test
+    public void testBatchOperations() throws Exception {
+        Path dir = tempDir("rental-batch");
+        RentalSystem system = new RentalSystem(dir);
+        Car first = new Car("Toyota", "Corolla", 2019, 5);
+        first.setLicensePlate("BAT001");
+        Car second = new Car("Mazda", "Three", 2020, 5);
+        second.setLicensePlate("BAT002");
+        Car duplicate = new Car("Kia", "Rio", 2018, 5);
+        duplicate.setLicensePlate("BAT001");
+        BatchResult<Vehicle> added = system.addVehicles(Arrays.asList(first, second, duplicate));
+        assertEquals(2, added.getSuccessCount());
+        assertEquals(1, added.getFailureCount());
+        assertFalse(added.getItems().get(2).isSuccess(), "Duplicate plate inside the batch is rejected");
+
+        Customer customer = new Customer(1, "Batch Renter");
+        BatchResult<Customer> customers = system.addCustomers(
+                Arrays.asList(customer, new Customer(1, "Same Id")));
+        assertEquals(1, customers.getSuccessCount());
+
+        LocalDate today = LocalDate.now();
+        BatchResult<RentalOrder> rented = system.rentVehicles(Arrays.asList(
+                new RentalOrder(first, customer, today, 100.0),
+                new RentalOrder(second, customer, today, 120.0),
+                new RentalOrder(first, customer, today, 100.0)));
+        assertEquals(2, rented.getSuccessCount());
+        assertEquals("Vehicle is not available for renting.", rented.getItems().get(2).getMessage());
+        assertEquals(Vehicle.VehicleStatus.RENTED, second.getStatus());
+
+        BatchResult<RentalOrder> returned = system.returnVehicles(Arrays.asList(
+                new RentalOrder(first, customer, today, 0.0)));
+        assertEquals(1, returned.getSuccessCount());
+        system.shutdown();
+
+        RentalSystem reloaded = new RentalSystem(dir);
+        assertEquals(2, reloaded.countVehicles(Vehicle.VehicleStatus.AVAILABLE) + reloaded.countVehicles(Vehicle.VehicleStatus.RENTED));
+        assertNotNull(reloaded.findCustomerById(1));
+        assertEquals(3, reloaded.getRentalHistory().getRentalHistory().size());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, reloaded.findVehicleByPlate("BAT001").getStatus());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reloaded.findVehicleByPlate("BAT002").getStatus());
+        reloaded.shutdown();
+    }
+    
+    /**
+     * Test that the bulk importer streams CSV rows in batches and reports rejected rows.
+     */
+    @Test
+    public void testBulkImport() throws Exception {
+        Path dir = tempDir("rental-import");
+        RentalSystem system = new RentalSystem(dir);
+        Path vehiclesCsv = dir.resolve("fleet.csv");
+        Files.write(vehiclesCsv, Arrays.asList(
+                "type,plate,make,model,year,fields",
+                "CAR,IMP001,Toyota,Corolla,2019,5",
+                "SPORTCAR,IMP002,Porsche,911,2022,2,450,true",
+                "MOTORCYCLE,IMP003,Honda,Cbr,2021,no",
+                "TRUCK,IMP004,Ford,F150,2020,3.5",
+                "CAR,IMP01,Kia,Rio,2018,5",
+                "",
+                "CAR,IMP001,Kia,Rio,2018,5",
+                "BUS,IMP005,Volvo,B9,2015,50"), StandardCharsets.UTF_8);
+        List<Long> progress = new ArrayList<>();
+        BulkImporter importer = new BulkImporter(system, 3, report -> progress.add(report.getRowsRead()));
+
+        BulkImporter.ImportReport report = importer.importVehicles(vehiclesCsv);
+        assertEquals(8, report.getRowsRead());
+        assertEquals(4, report.getImported());
+        assertEquals(3, report.getRejected());
+        assertTrue(report.getRejections().get(0).startsWith("line 6: Invalid license plate"));
+        assertTrue(report.getRejections().get(1).startsWith("line 8: "), "Duplicate plate is rejected");
+        assertTrue(report.getRejections().get(2).startsWith("line 9: Unknown vehicle type"));
+        assertEquals(Arrays.asList(3L, 6L, 8L), progress, "Progress is reported per batch");
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE, VehicleType.SPORT_CAR));
+        assertEquals(1, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE, VehicleType.TRUCK));
+
+        Path customersCsv = dir.resolve("customers.csv");
+        Files.write(customersCsv, Arrays.asList("7,Smith, Jane", "x,Nobody", "7,Again"), StandardCharsets.UTF_8);
+        report = importer.importCustomers(customersCsv);
+        assertEquals(1, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals("Smith, Jane", system.findCustomerById(7).getCustomerName());
+        system.shutdown();
+    }
+    
+    /**
+     * Test that unreadable lines in the data files are skipped instead of stopping startup.
+     */
+    @Test
+    public void testCorruptDataLines() throws Exception {
+        Path dir = tempDir("rental-corrupt");
+        Files.write(dir.resolve("vehicles.txt"), Arrays.asList(
+                "GDA001,Toyota,Corolla,2019,AVAILABLE",
+                "BAD!!,Honda,Civic,2021,AVAILABLE",
+                "GDA002,Honda,Civic,20x1,AVAILABLE",
+                "GDA003,Ford,Focus,2020,BROKEN",
+                "GDA004,Ford",
+                "GDA005,Kia,Rio,2018,AVAILABLE"), StandardCharsets.UTF_8);
+        Files.write(dir.resolve("customers.txt"), Arrays.asList("1,George", "x,Nobody", "2,Anne"),
+                StandardCharsets.UTF_8);
+        RentalSystem system = new RentalSystem(dir);
+        assertNotNull(system.findVehicleByPlate("GDA001"));
+        assertNotNull(system.findVehicleByPlate("GDA005"));
+        assertNull(system.findVehicleByPlate("GDA002"));
+        assertEquals(2, system.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        assertNotNull(system.findCustomerById(1));
+        assertNotNull(system.findCustomerById(2));
+        system.shutdown();
+    }
+    
+    /**
+     * Test the latency histogram's percentiles and the operation metrics exposed over JMX.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500.0, histogram.getMean(), 0.001);
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 65 / 64, "p50 within bucket precision: " + p50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 65 / 64, "p99 within bucket precision: " + p99);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        for (long v : new long[] {0, 1, 127, 128, 129, 255, 256, 1_000_003, 1L << 39}) {
+            assertTrue(LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(v)) >= v);
+        }
+
+        RentalSystem system = new RentalSystem(tempDir("rental-metrics"));
+        Car car = new Car("Toyota", "Yaris", 2020, 5);
+        car.setLicensePlate("MET001");
+        Customer customer = new Customer(1, "Metric Person");
+        system.addVehicle(car);
+        system.addCustomer(customer);
+        system.rentVehicle(car, customer, LocalDate.now(), 50.0);
+        system.returnVehicle(car, customer, LocalDate.now(), 0.0);
+        system.findVehicleByPlate("MET001");
+        RentalMetrics metrics = system.getMetrics();
+        assertEquals(1, metrics.get(RentalMetrics.Op.RENT_VEHICLE).getCount());
+        assertEquals(1, metrics.get(RentalMetrics.Op.FIND_VEHICLE_BY_PLATE).getCount());
+        assertEquals(2, metrics.get(RentalMetrics.Op.SAVE_RECORD).getCount());
+        assertTrue(metrics.get(RentalMetrics.Op.RECORDS_COMMIT).getCount() >= 1);
+        assertEquals(1, metrics.get(RentalMetrics.Op.LOAD_DATA).getCount());
+
+        metrics.register("RentalSystemTest");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("RentalSystemTest:type=Operation,name=\"rentVehicle\"");
+            assertEquals(1L, server.getAttribute(name, "Count"));
+            assertTrue((Double) server.getAttribute(name, "MaxMicros") > 0);
+        } finally {
+            metrics.unregister();
+            system.shutdown();
+        }
+    }
+    
+    /**
+     * Test that asynchronous rents apply immediately and complete persistence in the background.
+     */
+    @Test
+    public void testAsyncRentAndReturn() throws Exception {
+        Path dir = tempDir("rental-async");
+        RentalSystem system = new RentalSystem(dir);
+        Customer customer = new Customer(1, "Async Renter");
+        system.addCustomer(customer);
+        List<RentalFuture> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Car car = new Car("Toyota", "Corolla", 2020, 5);
+            car.setLicensePlate(String.format("ASY%03d", i));
+            system.addVehicle(car);
+            RentalFuture future = system.rentVehicleAsync(car, customer, LocalDate.now(), 80.0);
+            assertTrue(future.isDone(), "Applied before the call returns");
+            assertTrue(future.get());
+            assertEquals(Vehicle.VehicleStatus.RENTED, car.getStatus());
+            futures.add(future);
+        }
+        for (RentalFuture future : futures) {
+            assertTrue(future.persisted().get(10, TimeUnit.SECONDS));
+        }
+
+        Vehicle first = system.findVehicleByPlate("ASY000");
+        RentalFuture again = system.rentVehicleAsync(first, customer, LocalDate.now(), 80.0);
+        assertFalse(again.get(), "A rented vehicle cannot be rented again");
+        assertFalse(again.persisted().get(), "Nothing to persist for a rejected rent");
+        RentalFuture returned = system.returnVehicleAsync(first, customer, LocalDate.now(), 5.0);
+        assertTrue(returned.get());
+        system.shutdown();
+        assertTrue(returned.persisted().isDone(), "Shutdown completes pending writes");
+
+        RentalSystem reloaded = new RentalSystem(dir);
+        assertEquals(21, reloaded.getRentalHistory().getRentalHistory().size());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, reloaded.findVehicleByPlate("ASY000").getStatus());
+        assertEquals(Vehicle.VehicleStatus.RENTED, reloaded.findVehicleByPlate("ASY019").getStatus());
+        reloaded.shutdown();
+    }
+    
+    /**
+     * Test the HTTP front end: lookups, listing, and rent/return status codes.
+     */
+    @Test
+    public void testRentalServer() throws Exception {
+        RentalSystem system = new RentalSystem(tempDir("rental-server"));
+        Car car = new Car("Toyota", "Camry", 2021, 5);
+        car.setLicensePlate("WEB001");
+        system.addVehicle(car);
+        system.addCustomer(new Customer(5, "Web Customer"));
+        RentalServer server = new RentalServer(system, 0);
+        server.start();
+        String url = "http://localhost:" + server.getPort();
+        try {
+            assertEquals(200, httpStatus("GET", url + "/vehicles/web001"));
+            assertEquals(404, httpStatus("GET", url + "/vehicles/XXX999"));
+            assertEquals(200, httpStatus("GET", url + "/customers/5"));
+            assertEquals(400, httpStatus("GET", url + "/vehicles?status=PARKED"));
+            assertEquals(405, httpStatus("GET", url + "/rent?plate=WEB001&customer=5&amount=10"));
+            assertEquals(200, httpStatus("POST", url + "/rent?plate=WEB001&customer=5&amount=10"));
+            assertEquals(Vehicle.VehicleStatus.RENTED, car.getStatus());
+            assertEquals(409, httpStatus("POST", url + "/rent?plate=WEB001&customer=5&amount=10"));
+            assertEquals(404, httpStatus("POST", url + "/return?plate=WEB001&customer=6"));
+            assertEquals(200, httpStatus("POST", url + "/return?plate=WEB001&customer=5&fees=2.5"));
+            assertEquals(2, system.getRentalHistory().getRentalRecordsByCustomerId(5).size());
+            // A replica refuses every change, whatever the vehicle's status.
+            system.setReadOnly(true);
+            assertEquals(503, httpStatus("POST", url + "/rent?plate=WEB001&customer=5&amount=10"));
+            system.setReadOnly(false);
+        } finally {
+            server.stop(0);
+            system.shutdown();
+        }
+    }
+
+    private static int httpStatus(String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+    
+    /**
+     * Test reservations: overlap checks, RESERVED status, availability queries and reloading.
+     */
+    @Test
+    public void testReservations() throws Exception {
+        Path dir = tempDir("rental-reserve");
+        RentalSystem system = new RentalSystem(dir);
+        Car first = new Car("Toyota", "Corolla", 2020, 5);
+        first.setLicensePlate("RSV001");
+        Car second = new Car("Honda", "Civic", 2021, 5);
+        second.setLicensePlate("RSV002");
+        system.addVehicle(first);
+        system.addVehicle(second);
+        Customer alice = new Customer(1, "Alice");
+        Customer bob = new Customer(2, "Bob");
+        system.addCustomer(alice);
+        system.addCustomer(bob);
+        LocalDate today = LocalDate.now();
+
+        Reservation later = system.reserveVehicle(first, alice, today.plusDays(10), today.plusDays(14));
+        assertNotNull(later);
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, first.getStatus(), "Future bookings leave the status alone");
+        assertNull(system.reserveVehicle(first, bob, today.plusDays(14), today.plusDays(20)), "Overlaps on the last day");
+        assertNotNull(system.reserveVehicle(first, bob, today.plusDays(15), today.plusDays(20)));
+        assertNull(system.reserveVehicle(first, bob, today.plusDays(3), today.plusDays(1)), "End before start");
+
+        assertEquals(Arrays.asList(second), system.findAvailableVehicles(today.plusDays(12), today.plusDays(16)));
+        assertEquals(2, system.findAvailableVehicles(today.plusDays(1), today.plusDays(9)).size());
+        assertFalse(system.rentVehicle(first, bob, today.plusDays(12), 50.0), "Booked by Alice for that day");
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, first.getStatus());
+        assertTrue(system.rentVehicle(first, bob, today, 50.0));
+        assertTrue(system.returnVehicle(first, bob, today.plusDays(12), 0.0));
+        assertEquals(Vehicle.VehicleStatus.RESERVED, first.getStatus(), "Returned into Alice's booking");
+
+        Reservation now = system.reserveVehicle(second, bob, today, today.plusDays(2));
+        assertNotNull(now);
+        assertEquals(Vehicle.VehicleStatus.RESERVED, second.getStatus());
+        assertFalse(system.rentVehicle(second, alice, today, 50.0), "Only the booking customer can rent it");
+        assertTrue(system.rentVehicle(second, bob, today, 50.0));
+        assertTrue(system.returnVehicle(second, bob, today, 0.0));
+        assertTrue(system.cancelReservation(now.getReservationId()));
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, second.getStatus());
+        assertFalse(system.cancelReservation(now.getReservationId()));
+        system.shutdown();
+
+        RentalSystem reloaded = new RentalSystem(dir);
+        Vehicle reloadedFirst = reloaded.findVehicleByPlate("RSV001");
+        assertEquals(2, reloaded.getReservations(reloadedFirst).size());
+        assertNull(reloaded.findReservation(now.getReservationId()), "Cancelled booking stays cancelled");
+        reloaded.snapshot();
+        reloaded.shutdown();
+
+        RentalSystem compacted = new RentalSystem(dir);
+        assertEquals(2, compacted.getReservations(compacted.findVehicleByPlate("RSV001")).size());
+        Reservation next = compacted.reserveVehicle(compacted.findVehicleByPlate("RSV002"),
+                compacted.findCustomerById(1), today.plusDays(30), today.plusDays(31));
+        assertTrue(next.getReservationId() > now.getReservationId(), "Ids are not reused after reloading");
+        compacted.shutdown();
+    }
+
+    /**
+     * Test the reservation index against a brute-force overlap check.
+     */
+    @Test
+    public void testReservationBookQueries() {
+        ReservationBook book = new ReservationBook();
+        Random random = new Random(15);
+        List<Reservation> added = new ArrayList<>();
+        Customer customer = new Customer(1, "Booker");
+        Vehicle[] fleet = new Vehicle[20];
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i] = new Car("Kia", "Rio", 2020, 5);
+            fleet[i].setLicensePlate(String.format("RBQ%03d", i));
+        }
+        LocalDate base = LocalDate.of(2030, 1, 1);
+        for (int i = 0; i < 500; i++) {
+            LocalDate start = base.plusDays(random.nextInt(365));
+            Reservation r = new Reservation(i, fleet[random.nextInt(fleet.length)], customer,
+                    start, start.plusDays(random.nextInt(30)));
+            boolean overlaps = false;
+            for (Reservation other : added) {
+                if (other.getVehicle() == r.getVehicle() && other.overlaps(r.getStartDate(), r.getEndDate())) {
+                    overlaps = true;
+                }
+            }
+            assertEquals(!overlaps, book.add(r));
+            if (!overlaps) {
+                added.add(r);
+            }
+        }
+        for (int q = 0; q < 200; q++) {
+            LocalDate from = base.plusDays(random.nextInt(400) - 20);
+            LocalDate to = from.plusDays(random.nextInt(20));
+            Set<Integer> expected = new HashSet<>();
+            for (Reservation r : added) {
+                if (r.overlaps(from, to)) {
+                    expected.add(r.getVehicle().getPlateCode());
+                }
+            }
+            IntSet booked = book.bookedPlates(from, to);
+            assertEquals(expected.size(), booked.size());
+            for (int plate : expected) {
+                assertTrue(booked.contains(plate));
+            }
+        }
+
+        // A year-long booking, even once cancelled, leaves queries over short bookings exact.
+        Reservation longBooking = new Reservation(1000, fleet[0], customer, base.minusDays(400), base.minusDays(40));
+        assertTrue(book.add(longBooking));
+        assertEquals(1, book.overlapping(base.minusDays(41), base.minusDays(41)).size());
+        assertSame(longBooking, book.remove(1000));
+        assertTrue(book.overlapping(base.minusDays(41), base.minusDays(41)).isEmpty());
+        assertEquals(added.size(), book.all().size());
+    }
+    
+    /**
+     * Test that the revenue rollups match sums over the history, for live and bulk-loaded records.
+     */
+    @Test
+    public void testRevenueAggregates() {
+        Random random = new Random(16);
+        Vehicle[] fleet = { new Car("Toyota", "Corolla", 2020, 5), new Truck("Ford", "F150", 2019, 2.0),
+                new SportCar("Porsche", "911", 2022, 2, 450, true), new Motorcycle("Honda", "Cbr", 2021, false) };
+        for (int i = 0; i < fleet.length; i++) {
+            fleet[i].setLicensePlate("REV00" + i);
+        }
+        Customer[] customers = { new Customer(1, "One"), new Customer(2, "Two"), new Customer(3, "Three") };
+        LocalDate base = LocalDate.of(2024, 1, 20);
+        List<RentalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 70_000; i++) {
+            records.add(new RentalRecord(fleet[random.nextInt(fleet.length)], customers[random.nextInt(3)],
+                    base.plusDays(random.nextInt(60)), random.nextInt(20000) / 100.0, i % 2 == 0 ? "RENT" : "RETURN"));
+        }
+        RentalHistory history = new RentalHistory();
+        history.addRecords(records.subList(0, 69_000)); // Large enough for the parallel rebuild.
+        for (RentalRecord record : records.subList(69_000, records.size())) {
+            history.addRecord(record);
+        }
+
+        long total = 0, day = 0, range = 0, february = 0, trucks = 0, sportCar = 0, customerTwo = 0;
+        for (RentalRecord r : records) {
+            long cents = Math.round(r.getTotalAmount() * 100);
+            total += cents;
+            LocalDate date = r.getRecordDate();
+            day += date.equals(base) ? cents : 0;
+            range += (!date.isBefore(base.plusDays(5)) && !date.isAfter(base.plusDays(15))) ? cents : 0;
+            february += (date.getMonthValue() == 2) ? cents : 0;
+            trucks += (r.getVehicle() instanceof Truck) ? cents : 0;
+            sportCar += r.getVehicle().getLicensePlate().equals("REV002") ? cents : 0;
+            customerTwo += (r.getCustomer().getCustomerId() == 2) ? cents : 0;
+        }
+        assertEquals(total, history.getTotalRevenueCents());
+        assertEquals(day, history.getRevenueCents(base));
+        assertEquals(range, history.getRevenueCents(base.plusDays(5), base.plusDays(15)));
+        assertEquals(february, history.getRevenueCents(YearMonth.of(2024, 2)));
+        assertEquals(trucks, history.getRevenueCents(VehicleType.TRUCK));
+        assertEquals(sportCar, history.getRevenueCents(VehicleType.SPORT_CAR));
+        assertEquals(sportCar, history.getRevenueCentsByVehicle("rev002"));
+        assertEquals(customerTwo, history.getRevenueCentsByCustomerId(2));
+        assertEquals(0, history.getRevenueCentsByCustomerId(99));
+    }
+    
+    /**
+     * Test that every vehicle subtype round-trips through the binary codec, the journal and a snapshot.
+     */
+    @Test
+    public void testVehicleSerialization() throws Exception {
+        Car car = new Car("Toyota", "Corolla", 2020, 5);
+        car.setLicensePlate("SER001");
+        SportCar sportCar = new SportCar("Porsche", "911", 2022, 2, 450, true);
+        sportCar.setLicensePlate("SER002");
+        sportCar.setStatus(Vehicle.VehicleStatus.MAINTENANCE);
+        Motorcycle motorcycle = new Motorcycle("Ural", "Gear up", 2019, true);
+        motorcycle.setLicensePlate("SER003");
+        Truck truck = new Truck("Volvo", "Fh", 2017, 18.75);
+        truck.setLicensePlate("SER004");
+        Car twin = new Car("Toyota", "Corolla", 2021, 4);
+        twin.setLicensePlate("SER005");
+        List<Vehicle> fleet = Arrays.asList(car, sportCar, motorcycle, truck, twin);
+
+        VehicleCodec.Encoder encoder = new VehicleCodec.Encoder();
+        for (Vehicle v : fleet) {
+            encoder.encode(v);
+        }
+        VehicleCodec.Decoder decoder = new VehicleCodec.Decoder(ByteBuffer.wrap(encoder.toByteArray()));
+        for (Vehicle v : fleet) {
+            assertTrue(decoder.hasNext());
+            assertSameVehicle(v, decoder.next());
+        }
+        assertFalse(decoder.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> new VehicleCodec.Decoder(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+
+        // A vehicle of another kind is encoded too, and read back as a Car like an untyped journal line.
+        Vehicle other = new Vehicle("Segway", "Pt", 2015) { };
+        other.setLicensePlate("SER006");
+        other.setStatus(Vehicle.VehicleStatus.MAINTENANCE);
+        VehicleCodec.Encoder otherEncoder = new VehicleCodec.Encoder();
+        otherEncoder.encode(other);
+        Vehicle decodedOther = new VehicleCodec.Decoder(ByteBuffer.wrap(otherEncoder.toByteArray())).next();
+        assertEquals(Car.class, decodedOther.getClass());
+        assertEquals("SER006", decodedOther.getLicensePlate());
+        assertEquals("Segway", decodedOther.getMake());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, decodedOther.getStatus());
+
+        // Through the text journal, then through a snapshot.
+        Path dir = tempDir("rental-serialization");
+        RentalSystem system = new RentalSystem(dir);
+        assertEquals(fleet.size(), system.addVehicles(fleet).getSuccessCount());
+        system.shutdown();
+        RentalSystem reloaded = new RentalSystem(dir);
+        for (Vehicle v : fleet) {
+            assertSameVehicle(v, reloaded.findVehicleByPlate(v.getLicensePlate()));
+        }
+        reloaded.snapshot();
+        reloaded.shutdown();
+        assertTrue(Files.exists(dir.resolve("snapshot.bin")));
+        RentalSystem restored = new RentalSystem(dir);
+        for (Vehicle v : fleet) {
+            assertSameVehicle(v, restored.findVehicleByPlate(v.getLicensePlate()));
+        }
+        restored.shutdown();
+    }
+
+    private static void assertSameVehicle(Vehicle expected, Vehicle actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getInfo(), actual.getInfo());
+        assertEquals(expected.getStatus(), actual.getStatus());
+    }
+
+    /**
+     * Test that the columnar history storage answers queries like the object storage.
+     */
+    @Test
+    public void testColumnarRentalHistory() {
+        RentalHistory objects = new RentalHistory(new ObjectRecordStore());
+        RentalHistory columns = new RentalHistory(new ColumnarRecordStore());
+        Car car = new Car("Toyota", "Prius", 2021, 5);
+        car.setLicensePlate("COL001");
+        Truck truck = new Truck("Volvo", "Fh", 2017, 20.0);
+        truck.setLicensePlate("COL002");
+        Customer alice = new Customer(21, "Alice Column");
+        Customer bob = new Customer(22, "Bob Column");
+        LocalDate base = LocalDate.of(2024, 12, 30);
+        // Enough records to span two storage segments.
+        for (int i = 0; i < 70_000; i++) {
+            RentalRecord record = new RentalRecord((i % 3 == 0) ? truck : car, (i % 2 == 0) ? alice : bob,
+                    base.plusDays(i % 400), (i % 7) * 12.34, (i % 2 == 0) ? "RENT" : "RETURN");
+            objects.addRecord(record);
+            columns.addRecord(record);
+        }
+
+        List<RentalRecord> expected = objects.getRentalHistory();
+        List<RentalRecord> actual = columns.getRentalHistory();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i += 997) {
+            assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+            assertEquals(expected.get(i).getRecordDate(), actual.get(i).getRecordDate());
+            // Amounts are stored to the cent.
+            assertEquals(expected.get(i).getTotalAmount(), actual.get(i).getTotalAmount(), 0.005);
+            assertSame(expected.get(i).getVehicle(), actual.get(i).getVehicle());
+            assertSame(expected.get(i).getCustomer(), actual.get(i).getCustomer());
+        }
+        RentalRecord last = actual.get(actual.size() - 1);
+        assertEquals(expected.get(expected.size() - 1).getRecordDate(), last.getRecordDate());
+        assertEquals(expected.get(expected.size() - 1).getTotalAmount(), last.getTotalAmount(), 0.001);
+
+        assertEquals(objects.getRentalRecordsByVehicle("col002").size(), columns.getRentalRecordsByVehicle("col002").size());
+        assertEquals(objects.getRentalRecordsByCustomerId(22).size(), columns.getRentalRecordsByCustomerId(22).size());
+        assertEquals(objects.getTotalRevenueCents(), columns.getTotalRevenueCents());
+
+        // forEach reads the same fields straight from the columns, across segment boundaries.
+        List<String> visitedObjects = new ArrayList<>();
+        List<String> visitedColumns = new ArrayList<>();
+        objects.forEach(65_000, 66_000, (v, c, day, cents, type) ->
+                visitedObjects.add(v.getLicensePlate() + "," + c.getCustomerId() + "," + day + "," + cents + "," + type));
+        columns.forEach(65_000, 66_000, (v, c, day, cents, type) ->
+                visitedColumns.add(v.getLicensePlate() + "," + c.getCustomerId() + "," + day + "," + cents + "," + type));
+        assertEquals(1000, visitedColumns.size());
+        assertEquals(visitedObjects, visitedColumns);
+        RentalAnalytics analytics = new RentalAnalytics();
+        List<Vehicle> fleet = Arrays.asList(car, truck);
+        assertEquals(analytics.analyze(expected, fleet, base, base.plusDays(400)).getFleetUtilization(),
+                analytics.analyze(columns, fleet, base, base.plusDays(400)).getFleetUtilization(), 1e-12);
+    }
+
+    /**
+     * Test fleet analytics on a known history, and that splitting the work does not change the results.
+     */
+    @Test
+    public void testRentalAnalytics() {
+        Car car = new Car("Toyota", "Yaris", 2020, 4);
+        car.setLicensePlate("ANA001");
+        Truck truck = new Truck("Volvo", "Fh", 2017, 20.0);
+        truck.setLicensePlate("ANA002");
+        Car idle = new Car("Fiat", "Uno", 2010, 4);
+        idle.setLicensePlate("ANA003");
+        Customer customer = new Customer(31, "Ann Alytics");
+        LocalDate d = LocalDate.of(2025, 3, 1);
+        List<RentalRecord> records = Arrays.asList(
+                new RentalRecord(car, customer, d, 100.0, "RENT"),
+                new RentalRecord(truck, customer, d.plusDays(2), 300.0, "RENT"),
+                new RentalRecord(car, customer, d.plusDays(4), 0.0, "RETURN"),
+                new RentalRecord(truck, customer, d.plusDays(3), 0.0, "RETURN"),
+                new RentalRecord(car, customer, d.plusDays(10), 100.0, "RENT"),
+                new RentalRecord(car, customer, d.plusDays(12), 0.0, "RETURN"),
+                new RentalRecord(truck, customer, d.plusDays(20), 300.0, "RENT"));
+        List<Vehicle> fleet = Arrays.asList(car, truck, idle);
+
+        // Window: the 30 days from d; the truck's last rental is still open.
+        RentalAnalytics.Report report = new RentalAnalytics(ForkJoinPool.commonPool(), 2)
+                .analyze(records, fleet, d, d.plusDays(29));
+        assertEquals(3, report.getRentals());
+        assertEquals((4 + 2 + 1) / 3.0, report.getAverageRentalDays(), 1e-9);
+        assertEquals(6, report.getUsage(car).getRentedDays());
+        assertEquals(1 + 10, report.getUsage(truck).getRentedDays());
+        assertEquals(0, report.getUsage(idle).getRentedDays());
+        assertEquals(6 / 30.0, report.getUsage(car).getUtilization(), 1e-9);
+        assertEquals(6 / 60.0, report.getUtilization(VehicleType.CAR), 1e-9);
+        assertEquals(17 / 90.0, report.getFleetUtilization(), 1e-9);
+        RentalAnalytics.IdleDistribution gaps = report.getIdleDistribution();
+        assertEquals(2, gaps.getCount());
+        assertEquals(1, gaps.getCount(6));
+        assertEquals(1, gaps.getCount(17));
+        assertEquals(17, gaps.getPercentileDays(100));
+
+        // A large random history gives the same answers however it is split.
+        Random random = new Random(20);
+        List<Vehicle> many = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Car c = new Car("Kia", "Rio", 2020, 4);
+            c.setLicensePlate(String.format("ANB%03d", i));
+            many.add(c);
+        }
+        List<RentalRecord> history = new ArrayList<>();
+        boolean[] out = new boolean[many.size()];
+        LocalDate day = d;
+        for (int i = 0; i < 20_000; i++) {
+            day = day.plusDays(random.nextInt(2));
+            int v = random.nextInt(many.size());
+            history.add(new RentalRecord(many.get(v), customer, day, 10.0, out[v] ? "RETURN" : "RENT"));
+            out[v] = !out[v];
+        }
+        RentalAnalytics.Report sequential = new RentalAnalytics(new ForkJoinPool(1), Integer.MAX_VALUE)
+                .analyze(history, many, d, day);
+        RentalAnalytics.Report parallel = new RentalAnalytics(ForkJoinPool.commonPool(), 97)
+                .analyze(history, many, d, day);
+        assertEquals(sequential.getRentals(), parallel.getRentals());
+        assertEquals(sequential.getAverageRentalDays(), parallel.getAverageRentalDays(), 1e-9);
+        assertEquals(sequential.getFleetUtilization(), parallel.getFleetUtilization(), 1e-12);
+        assertEquals(sequential.getIdleDistribution().getCount(), parallel.getIdleDistribution().getCount());
+        assertEquals(sequential.getIdleDistribution().getMeanDays(), parallel.getIdleDistribution().getMeanDays(), 1e-9);
+        for (Vehicle v : many) {
+            assertEquals(sequential.getUsage(v).getRentedDays(), parallel.getUsage(v).getRentedDays());
+        }
+    }
+
+    /**
+     * Test consistent hashing and routing across RentalSystem shards in one JVM.
+     */
+    @Test
+    public void testShardedRentalSystem() throws Exception {
+        // Growing the ring from 4 to 5 shards moves only about a fifth of the keys.
+        ConsistentHashRing four = new ConsistentHashRing(4);
+        ConsistentHashRing five = new ConsistentHashRing(5);
+        int[] perShard = new int[4];
+        int moved = 0;
+        for (int key = 0; key < 100_000; key++) {
+            perShard[four.shardFor(key)]++;
+            if (four.shardFor(key) != five.shardFor(key)) {
+                moved++;
+            }
+        }
+        assertTrue(moved > 12_000 && moved < 30_000, "moved " + moved);
+        for (int count : perShard) {
+            assertTrue(count > 15_000 && count < 35_000, Arrays.toString(perShard));
+        }
+
+        Path dir = tempDir("rental-cluster");
+        ShardedRentalSystem cluster = new ShardedRentalSystem(dir, 4, Journal.Durability.NO_SYNC);
+        for (int i = 0; i < 200; i++) {
+            Car car = new Car("Kia", "Rio", 2020, 4);
+            car.setLicensePlate(String.format("SHD%03d", i));
+            assertTrue(cluster.addVehicle(car));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertTrue(cluster.addCustomer(new Customer(500 + i, "Shard Customer " + i)));
+        }
+        for (int s = 0; s < 4; s++) {
+            assertTrue(cluster.getShard(s).countVehicles(Vehicle.VehicleStatus.AVAILABLE) > 0, "shard " + s + " is empty");
+        }
+        Vehicle vehicle = cluster.findVehicleByPlate("shd042");
+        assertNotNull(vehicle);
+        assertSame(vehicle, cluster.getShard(cluster.shardForPlate("SHD042")).findVehicleByPlate("SHD042"));
+        Customer customer = cluster.findCustomerById(507);
+        assertEquals("Shard Customer 7", customer.getCustomerName());
+
+        assertTrue(cluster.rentVehicle(vehicle, customer, LocalDate.now(), 70.0));
+        assertFalse(cluster.rentVehicle(vehicle, customer, LocalDate.now(), 70.0));
+        // A rejected rent does not copy the customer onto the vehicle's shard.
+        int vehicleShard = cluster.shardForPlate("SHD042");
+        int outsider = 500;
+        while (cluster.shardForCustomer(outsider) == vehicleShard) {
+            outsider++;
+        }
+        assertFalse(cluster.rentVehicle(vehicle, cluster.findCustomerById(outsider), LocalDate.now(), 70.0));
+        assertNull(cluster.getShard(vehicleShard).findCustomerById(outsider));
+        assertEquals(199, cluster.countVehicles(Vehicle.VehicleStatus.AVAILABLE));
+        List<Vehicle> available = cluster.findVehiclesByStatus(Vehicle.VehicleStatus.AVAILABLE);
+        assertEquals(199, available.size());
+        assertEquals("SHD000", available.get(0).getLicensePlate());
+        assertEquals(7000, cluster.getTotalRevenueCents());
+        // An accepted asynchronous rent copies the customer over once its future completes.
+        Vehicle guestVehicle = null;
+        for (int i = 0; guestVehicle == null; i++) {
+            String plate = String.format("SHD%03d", i);
+            if (i != 42 && cluster.shardForPlate(plate) != cluster.shardForCustomer(outsider)) {
+                guestVehicle = cluster.findVehicleByPlate(plate);
+            }
+        }
+        Customer guest = cluster.findCustomerById(outsider);
+        RentalSystem guestShard = cluster.getShard(cluster.shardForPlate(guestVehicle.getLicensePlate()));
+        assertTrue(cluster.rentVehicleAsync(guestVehicle, guest, LocalDate.now(), 0.0).get());
+        assertNotNull(guestShard.findCustomerById(outsider));
+        assertTrue(cluster.returnVehicleAsync(guestVehicle, guest, LocalDate.now(), 0.0).persisted().get());
+        List<Customer> found = cluster.searchCustomersByName("shard customer 1", 5);
+        assertEquals("Shard Customer 1", found.get(0).getCustomerName());
+        assertEquals(5, found.size());
+        cluster.shutdown();
+
+        // The rental record and the customer it names come back on the vehicle's shard.
+        ShardedRentalSystem reopened = new ShardedRentalSystem(dir, 4, Journal.Durability.NO_SYNC);
+        assertEquals(Vehicle.VehicleStatus.RENTED, reopened.findVehicleByPlate("SHD042").getStatus());
+        assertEquals(1, reopened.getShard(reopened.shardForPlate("SHD042")).getRentalHistory()
+                .getRentalRecordsByCustomerId(507).size());
+        reopened.shutdown();
+        assertThrows(IllegalArgumentException.class, () -> new ShardedRentalSystem(dir, 3));
+    }
+
+    /**
+     * Test log shipping from a primary RentalSystem to an in-process read replica.
+     */
+    @Test
+    public void testReplication() throws Exception {
+        RentalSystem primary = new RentalSystem(tempDir("rental-primary"), Journal.Durability.NO_SYNC);
+        Car before = new Car("Fiat", "Panda", 2019, 4);
+        before.setLicensePlate("REP001");
+        primary.addVehicle(before);
+        Customer customer = new Customer(900, "Replica Customer");
+        primary.addCustomer(customer);
+        primary.rentVehicle(before, customer, LocalDate.now(), 40.0);
+        ReplicationSource source = primary.startReplication(8);
+
+        // Data from before replication started arrives with the snapshot.
+        RentalSystem replica = new RentalSystem(tempDir("rental-replica"), Journal.Durability.NO_SYNC);
+        ReplicaFollower follower = new ReplicaFollower(replica, source);
+        assertEquals(0, follower.poll());
+        assertEquals(1, follower.getSnapshotsInstalled());
+        assertEquals(Vehicle.VehicleStatus.RENTED, replica.findVehicleByPlate("REP001").getStatus());
+        assertEquals(4000, replica.getRentalHistory().getTotalRevenueCents());
+
+        Truck truck = new Truck("Volvo", "FH", 2021, 18.0);
+        truck.setLicensePlate("REP002");
+        primary.addVehicle(truck);
+        primary.returnVehicle(before, customer, LocalDate.now(), 5.0);
+        primary.changeStatus(truck, Vehicle.VehicleStatus.MAINTENANCE);
+        assertEquals(0, follower.getLagEntries());
+        assertEquals(3, follower.poll());
+        assertEquals(0, follower.getLagEntries());
+        assertEquals(0, follower.getLagMillis());
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, replica.findVehicleByPlate("REP001").getStatus());
+        assertEquals(Vehicle.VehicleStatus.MAINTENANCE, replica.findVehicleByPlate("REP002").getStatus());
+        assertEquals(18.0, ((Truck) replica.findVehicleByPlate("REP002")).getCargoCapacity());
+        assertEquals(4500, replica.getRentalHistory().getTotalRevenueCents());
+        assertEquals(1, replica.countVehicles(Vehicle.VehicleStatus.MAINTENANCE));
+
+        // The replica only serves reads.
+        assertTrue(replica.isReadOnly());
+        Vehicle copy = replica.findVehicleByPlate("REP001");
+        assertFalse(replica.rentVehicle(copy, replica.findCustomerById(900), LocalDate.now(), 1.0));
+        assertFalse(replica.addCustomer(new Customer(901, "Nobody")));
+        assertEquals(Vehicle.VehicleStatus.AVAILABLE, copy.getStatus());
+
+        // A replica that starts after the log has wrapped catches up from a snapshot.
+        for (int i = 0; i < 10; i++) {
+            primary.rentVehicle(before, customer, LocalDate.now(), 10.0);
+            primary.returnVehicle(before, customer, LocalDate.now(), 0.0);
+        }
+        assertNull(source.read(0, 100));
+        ReplicationSnapshot state = source.snapshot();
+        List<RentalRecord> history = primary.getRentalHistory().getRentalHistory();
+        assertEquals(source.getLastSeq(), state.getSeq());
+        assertEquals(history.size(), state.getRecords().size());
+        assertEquals("RENT,REP001,900," + LocalDate.now() + ",40.0", state.getRecords().get(0));
+        assertTrue(state.getRecords().get(history.size() - 1).startsWith("RETURN,REP001,900,"));
+        Path lateDir = tempDir("rental-late");
+        RentalSystem late = new RentalSystem(lateDir, Journal.Durability.NO_SYNC);
+        ReplicaFollower lateFollower = new ReplicaFollower(late, source);
+        lateFollower.poll();
+        assertEquals(source.getLastSeq(), lateFollower.getAppliedSeq());
+        assertEquals(primary.getRentalHistory().getTotalRevenueCents(), late.getRentalHistory().getTotalRevenueCents());
+        assertEquals(primary.getRentalHistory().getRentalHistory().size(), late.getRentalHistory().getRentalHistory().size());
+
+        // The first replica has fallen too far behind to tail the log: it starts over.
+        follower.poll();
+        assertEquals(2, follower.getSnapshotsInstalled());
+        assertEquals(source.getLastSeq(), follower.getAppliedSeq());
+        assertEquals(primary.getRentalHistory().getTotalRevenueCents(), replica.getRentalHistory().getTotalRevenueCents());
+        assertEquals(2, replica.countVehicles(Vehicle.VehicleStatus.AVAILABLE)
+                + replica.countVehicles(Vehicle.VehicleStatus.MAINTENANCE));
+
+        // A restarted replica loads its own files, then resumes from a fresh snapshot.
+        late.shutdown();
+        RentalSystem restarted = new RentalSystem(lateDir, Journal.Durability.NO_SYNC);
+        assertEquals(primary.getRentalHistory().getRentalHistory().size(),
+                restarted.getRentalHistory().getRentalHistory().size());
+        primary.rentVehicle(before, customer, LocalDate.now(), 10.0);
+        ReplicaFollower resumed = new ReplicaFollower(restarted, source);
+        resumed.poll();
+        assertEquals(Vehicle.VehicleStatus.RENTED, restarted.findVehicleByPlate("REP001").getStatus());
+        assertEquals(primary.getRentalHistory().getRentalHistory().size(),
+                restarted.getRentalHistory().getRentalHistory().size());
+        assertEquals(2, restarted.countVehicles(Vehicle.VehicleStatus.RENTED)
+                + restarted.countVehicles(Vehicle.VehicleStatus.MAINTENANCE));
+
+        primary.shutdown();
+        replica.shutdown();
+        restarted.shutdown();
+    }
+
+    /**
+     * Test change events published to subscribers, and a slow subscriber skipping ahead.
+     */
+    @Test
+    public void testRentalEvents() throws Exception {
+        RentalSystem system = new RentalSystem(tempDir("rental-events"), Journal.Durability.NO_SYNC);
+        List<RentalEvent> received = new ArrayList<>();
+        CountDownLatch all = new CountDownLatch(4);
+        RentalEventRing.Subscription subscription = system.subscribe(batch -> {
+            synchronized (received) {
+                received.addAll(batch);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                all.countDown();
+            }
+        });
+        Car car = new Car("Mazda", "3", 2022, 5);
+        car.setLicensePlate("EVT001");
+        Customer customer = new Customer(950, "Event Customer");
+        system.addCustomer(customer);
+        system.addVehicle(car);
+        system.rentVehicle(car, customer, LocalDate.now(), 55.0);
+        system.returnVehicle(car, customer, LocalDate.now(), 7.5);
+        system.changeStatus(car, Vehicle.VehicleStatus.MAINTENANCE);
+        assertTrue(all.await(5, TimeUnit.SECONDS));
+        subscription.close();
+        synchronized (received) {
+            assertEquals(4, received.size());
+            assertEquals(RentalEvent.Type.VEHICLE_ADDED, received.get(0).getType());
+            assertEquals(RentalEvent.Type.RENTED, received.get(1).getType());
+            assertEquals(customer, received.get(1).getCustomer());
+            assertEquals(55.0, received.get(1).getAmount());
+            assertEquals(RentalEvent.Type.RETURNED, received.get(2).getType());
+            assertEquals(Vehicle.VehicleStatus.AVAILABLE, received.get(2).getStatus());
+            assertEquals(RentalEvent.Type.STATUS_CHANGED, received.get(3).getType());
+            assertEquals(Vehicle.VehicleStatus.MAINTENANCE, received.get(3).getStatus());
+            for (int i = 1; i < received.size(); i++) {
+                assertTrue(received.get(i).getSeq() > received.get(i - 1).getSeq());
+            }
+        }
+        assertEquals(4, subscription.getDelivered());
+        system.shutdown();
+
+        // A stalled subscriber loses what was overwritten but never blocks the publisher.
+        RentalEventRing ring = new RentalEventRing(8);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger missedReports = new AtomicInteger();
+        RentalEventRing.Subscription slow = ring.subscribe(new RentalEventListener() {
+            @Override
+            public void onEvents(List<RentalEvent> batch) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onMissed(long count) {
+                missedReports.incrementAndGet();
+            }
+        }, 4);
+        for (int i = 0; i < 100; i++) {
+            ring.publish(RentalEvent.Type.STATUS_CHANGED, car, Vehicle.VehicleStatus.AVAILABLE, null, null, 0);
+        }
+        release.countDown();
+        slow.close();
+        assertTrue(slow.getMissed() > 0);
+        assertTrue(missedReports.get() >= 1);
+        assertEquals(100, slow.getDelivered() + slow.getMissed());
+        assertEquals(0, slow.getLag());
+    }
+
+    /**
+     * Test the single-writer command pipeline: ordering, one winner per vehicle, and persistence.
+     */
+    @Test
+    public void testCommandPipeline() throws Exception {
+        Path dir = tempDir("rental-pipeline");
+        RentalSystem system = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+        CommandPipeline pipeline = new CommandPipeline(system, 16);
+        Customer customer = new Customer(960, "Pipeline Customer");
+        assertTrue(pipeline.addCustomer(customer).get(5, TimeUnit.SECONDS));
+        List<Car> cars = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Car car = new Car("Skoda", "Fabia", 2021, 5);
+            car.setLicensePlate(String.format("PIP%03d", i));
+            cars.add(car);
+            pipeline.addVehicle(car);
+        }
+        assertFalse(pipeline.addVehicle(cars.get(0)).get(5, TimeUnit.SECONDS));
+        // A command that throws fails alone; the writer keeps going.
+        RentalFuture broken = pipeline.rentVehicle(null, customer, LocalDate.now(), 1.0);
+        assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> broken.persisted().get(5, TimeUnit.SECONDS));
+
+        // Commands from one thread apply in submission order, without waiting in between.
+        RentalFuture rent = pipeline.rentVehicle(cars.get(1), customer, LocalDate.now(), 30.0);
+        RentalFuture giveBack = pipeline.returnVehicle(cars.get(1), customer, LocalDate.now(), 2.0);
+        assertTrue(rent.get(5, TimeUnit.SECONDS));
+        assertTrue(giveBack.persisted().get(5, TimeUnit.SECONDS));
+
+        // Many threads racing for the same vehicles: exactly one rental each.
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<RentalFuture>> attempts = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            attempts.add(executor.submit(() -> {
+                RentalFuture last = null;
+                for (Car car : cars) {
+                    last = pipeline.rentVehicle(car, customer, LocalDate.now(), 10.0);
+                }
+                return last;
+            }));
+        }
+        for (Future<RentalFuture> attempt : attempts) {
+            attempt.get(10, TimeUnit.SECONDS).persisted().get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(50, system.countVehicles(Vehicle.VehicleStatus.RENTED));
+        assertEquals(3200 + 50 * 1000, system.getRentalHistory().getTotalRevenueCents());
+        pipeline.close();
+        assertEquals(0, pipeline.getBacklog());
+        assertThrows(IllegalStateException.class, () -> pipeline.addCustomer(new Customer(961, "Late")));
+        system.shutdown();
+
+        RentalSystem reopened = new RentalSystem(dir, Journal.Durability.NO_SYNC);
+        assertEquals(50, reopened.countVehicles(Vehicle.VehicleStatus.RENTED));
+        assertEquals(52, reopened.getRentalHistory().getRentalHistory().size());
+        reopened.shutdown();
+    }
+
+    /**
+     * Test request ids: retries return the first result, and the dedup cache stays bounded.
+     */
+    @Test
+    public void testIdempotentRequests() throws Exception {
+        long[] now = {0};
+        DedupCache<Integer> cache = new DedupCache<>(32, 100, () -> now[0]);
+        AtomicInteger runs = new AtomicInteger();
+        assertEquals(1, (int) cache.execute("a", runs::incrementAndGet));
+        assertEquals(1, (int) cache.execute("a", runs::incrementAndGet));
+        assertEquals(1, cache.getHits());
+        now[0] = 150;
+        assertEquals(2, (int) cache.execute("a", runs::incrementAndGet));
+        assertThrows(IllegalStateException.class, () -> cache.execute("b", () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(3, (int) cache.execute("b", runs::incrementAndGet));
+        for (int i = 0; i < 10_000; i++) {
+            cache.execute("id-" + i, () -> 0);
+        }
+        assertTrue(cache.size() <= 32, "size " + cache.size());
+
+        RentalSystem system = new RentalSystem(tempDir("rental-dedup"), Journal.Durability.NO_SYNC);
+        Car car = new Car("Seat", "Ibiza", 2020, 5);
+        car.setLicensePlate("DUP001");
+        Customer customer = new Customer(970, "Retry Customer");
+        assertTrue(system.addVehicle("add-1", car));
+        assertTrue(system.addVehicle("add-1", car));
+        system.addCustomer(customer);
+        assertTrue(system.rentVehicle("rent-1", car, customer, LocalDate.now(), 60.0));
+        assertTrue(system.rentVehicle("rent-1", car, customer, LocalDate.now(), 60.0));
+        assertTrue(system.returnVehicleAsync("return-1", car, customer, LocalDate.now(), 5.0).persisted().get());
+        assertTrue(system.returnVehicleAsync("return-1", car, customer, LocalDate.now(), 5.0).persisted().get());
+        // A new id is a new request.
+        assertFalse(system.returnVehicle("return-2", car, customer, LocalDate.now(), 5.0));
+        // So is an id reused for a different operation.
+        assertTrue(system.rentVehicle("return-2", car, customer, LocalDate.now(), 60.0));
+        assertEquals(3, system.getRentalHistory().getRentalHistory().size());
+        assertEquals(12500, system.getRentalHistory().getTotalRevenueCents());
+        assertEquals(3, system.getDeduplicatedRequests());
+        system.shutdown();
+    }
+
     /**
      * Test Singleton Validation for RentalSystem.
      */
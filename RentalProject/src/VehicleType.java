@@ -0,0 +1,17 @@
+// The concrete kinds of vehicle in the fleet, for per-type indexes and counts.
+public enum VehicleType {
+    CAR, SPORT_CAR, MOTORCYCLE, TRUCK, OTHER;
+
+    public static VehicleType of(Vehicle vehicle) {
+        if (vehicle instanceof SportCar) {
+            return SPORT_CAR;
+        } else if (vehicle instanceof Car) {
+            return CAR;
+        } else if (vehicle instanceof Motorcycle) {
+            return MOTORCYCLE;
+        } else if (vehicle instanceof Truck) {
+            return TRUCK;
+        }
+        return OTHER;
+    }
+}